@@ -0,0 +1,77 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import net.test.local.simple.codigo.BinaryIndexFile;
+import net.test.local.simple.codigo.KeyValueIndex;
+import net.test.local.simple.codigo.MappedInputParser;
+import net.test.local.simple.codigo.PyramidDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decoding only, on structures that are already built: the entry walk over
+ * the sorted {@code TreeMap} against direct triangular lookups.
+ *
+ * @author pc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx16g"})
+public class DecodeBenchmark {
+
+    @Param({"1000", "100000", "10000000", "100000000"})
+    public int lines;
+
+    private TreeMap<Integer, String> treeMap;
+    private KeyValueIndex parsed;
+    private KeyValueIndex mapped;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path text = InputFiles.text(lines);
+        treeMap = LegacyPipeline.parse(text);
+        MappedInputParser parser = new MappedInputParser(Runtime.getRuntime().availableProcessors());
+        parsed = parser.parse(text);
+        Path index = BinaryIndexFile.indexPathFor(text);
+        if (BinaryIndexFile.isStale(index, text)) {
+            BinaryIndexFile.compile(text, index, parser);
+        }
+        mapped = BinaryIndexFile.load(index);
+    }
+
+    @Benchmark
+    public void legacyTreeMapWalk(Blackhole bh) {
+        LegacyPipeline.decode(treeMap, bh::consume);
+    }
+
+    @Benchmark
+    public String[] triangularParsedIndex() {
+        return PyramidDecoder.decode(parsed);
+    }
+
+    @Benchmark
+    public String[] triangularBinaryIndex() {
+        return PyramidDecoder.decode(mapped);
+    }
+}
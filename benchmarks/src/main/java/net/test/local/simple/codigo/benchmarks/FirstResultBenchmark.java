@@ -0,0 +1,82 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import net.test.local.simple.codigo.BinaryIndexFile;
+import net.test.local.simple.codigo.KeyValueIndex;
+import net.test.local.simple.codigo.MappedInputParser;
+import net.test.local.simple.codigo.PyramidDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to first result: from a file on disk to the first decoded word, as a
+ * cold single shot per iteration, the way a command-line run experiences it.
+ *
+ * @author pc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(value = 3, jvmArgsAppend = {"-Xmx16g"})
+public class FirstResultBenchmark {
+
+    @Param({"1000", "100000", "10000000", "100000000"})
+    public int lines;
+
+    private Path text;
+    private Path index;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        text = InputFiles.text(lines);
+        index = BinaryIndexFile.indexPathFor(text);
+        if (BinaryIndexFile.isStale(index, text)) {
+            BinaryIndexFile.compile(text, index, new MappedInputParser());
+        }
+    }
+
+    @Benchmark
+    public String legacy() throws IOException {
+        String[] first = new String[1];
+        LegacyPipeline.decode(LegacyPipeline.parse(text), word -> {
+            if (first[0] == null) {
+                first[0] = word;
+            }
+        });
+        return first[0];
+    }
+
+    @Benchmark
+    public String mappedParse() throws IOException {
+        return new MappedInputParser().parse(text).valueAt(0);
+    }
+
+    @Benchmark
+    public String streamDecode() throws IOException {
+        return PyramidDecoder.decodeStream(text).valueAt(0);
+    }
+
+    @Benchmark
+    public String binaryIndex() throws IOException {
+        KeyValueIndex loaded = BinaryIndexFile.load(index);
+        return loaded.valueAt(PyramidDecoder.positions(loaded)[0]);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import net.test.local.simple.codigo.BinaryIndexFile;
+import net.test.local.simple.codigo.DictionaryKeyValueIndex;
+import net.test.local.simple.codigo.KeyValueIndex;
+import net.test.local.simple.codigo.MappedInputParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Ingestion: from a text file on disk to a sorted structure. Reported as
+ * files per second; multiply by {@code lines} for lines per second.
+ *
+ * @author pc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx16g"})
+public class IngestBenchmark {
+
+    @Param({"1000", "100000", "10000000", "100000000"})
+    public int lines;
+
+    private Path text;
+    private Path index;
+    private MappedInputParser sequential;
+    private MappedInputParser parallel;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        text = InputFiles.text(lines);
+        sequential = new MappedInputParser();
+        parallel = new MappedInputParser(Runtime.getRuntime().availableProcessors());
+        index = BinaryIndexFile.indexPathFor(text);
+        if (BinaryIndexFile.isStale(index, text)) {
+            BinaryIndexFile.compile(text, index, parallel);
+        }
+    }
+
+    @Benchmark
+    public TreeMap<Integer, String> legacyHashMapTreeMap() throws IOException {
+        return LegacyPipeline.parse(text);
+    }
+
+    @Benchmark
+    public KeyValueIndex mappedParse() throws IOException {
+        return sequential.parse(text);
+    }
+
+    @Benchmark
+    public KeyValueIndex mappedParseParallel() throws IOException {
+        return parallel.parse(text);
+    }
+
+    @Benchmark
+    public KeyValueIndex mappedParseDictionary() throws IOException {
+        return DictionaryKeyValueIndex.encode(sequential.parse(text));
+    }
+
+    @Benchmark
+    public KeyValueIndex binaryIndexLoad() throws IOException {
+        return BinaryIndexFile.load(index);
+    }
+}
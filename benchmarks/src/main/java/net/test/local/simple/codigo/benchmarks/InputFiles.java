@@ -0,0 +1,83 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Synthetic {@code number word} inputs in the puzzle layout: keys
+ * {@code 1..n}, each once, in scrambled order, with words drawn from a small
+ * vocabulary. Files are generated once and reused from
+ * {@code ${java.io.tmpdir}/simplecodigo-bench}.
+ *
+ * @author pc
+ */
+public class InputFiles {
+
+    static final String[] WORDS = {
+        "land", "sun", "too", "huge", "dont", "such", "noun", "student", "brown", "complete",
+        "play", "cook", "yard", "clock", "would", "plain", "excite", "fire", "wish", "cool",
+        "child", "past", "colony", "oil", "dog", "back", "money", "kind", "open", "finger"
+    };
+
+    // Prime larger than any benchmarked size, so i -> i * STEP mod n is a permutation
+    static final long STEP = 1_000_000_007L;
+
+    private InputFiles() {
+    }
+
+    /**
+     * @param lines number of lines
+     * @return the text file with that many lines, generated if missing
+     */
+    public static Path text(int lines) throws IOException {
+        Path dir = Path.of(System.getProperty("java.io.tmpdir"), "simplecodigo-bench");
+        Files.createDirectories(dir);
+        Path file = dir.resolve("lines-" + lines + ".txt");
+        if (Files.isRegularFile(file)) {
+            return file;
+        }
+        Path temp = Files.createTempFile(dir, "lines-" + lines, ".tmp");
+        byte[][] words = new byte[WORDS.length][];
+        for (int i = 0; i < WORDS.length; i++) {
+            words[i] = (" " + WORDS[i] + "\n").getBytes(StandardCharsets.US_ASCII);
+        }
+        byte[] buffer = new byte[1 << 20];
+        int pos = 0;
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            for (long i = 0; i < lines; i++) {
+                if (pos > buffer.length - 32) {
+                    out.write(buffer, 0, pos);
+                    pos = 0;
+                }
+                int key = (int) (i * STEP % lines) + 1;
+                pos = writeInt(buffer, pos, key);
+                byte[] word = words[(int) ((i * 31 + key) % words.length)];
+                System.arraycopy(word, 0, buffer, pos, word.length);
+                pos += word.length;
+            }
+            out.write(buffer, 0, pos);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    private static int writeInt(byte[] buffer, int pos, int value) {
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * The original {@code Simplecodigo} pipeline, kept as the baseline:
+ * {@code readLine}, {@code split}, {@code parseInt}, a boxed {@code HashMap}
+ * and a {@code TreeMap} copy to sort it.
+ *
+ * @author pc
+ */
+public class LegacyPipeline {
+
+    private LegacyPipeline() {
+    }
+
+    public static TreeMap<Integer, String> parse(Path file) throws IOException {
+        Map<Integer, String> dataMap = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ", 2);
+                if (parts.length == 2) {
+                    try {
+                        dataMap.put(Integer.parseInt(parts[0]), parts[1]);
+                    } catch (NumberFormatException e) {
+                        // Ignored, as the benchmark inputs are well formed
+                    }
+                }
+            }
+        }
+        return new TreeMap<>(dataMap);
+    }
+
+    /**
+     * The row/column walk over every entry, handing each row end to
+     * {@code sink}.
+     */
+    public static void decode(TreeMap<Integer, String> ordenado, Consumer<String> sink) {
+        int k = 0, n = 0;
+        for (Map.Entry<Integer, String> entry : ordenado.entrySet()) {
+            if (k != n) {
+                n++;
+            } else {
+                sink.accept(entry.getValue());
+                k++;
+                n = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import net.test.local.simple.codigo.OscillatorBank;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sine generation for one block of {@code StereoNoise}: the original
+ * per-sample {@code Math.sin} loop against {@link OscillatorBank} in both
+ * modes. Every oscillator is rendered for the whole block, so divide the
+ * score by the block size times {@code oscillators} for seconds per sample.
+ *
+ * @author pc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OscillatorBenchmark {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int BLOCK = 4096;
+
+    @Param({"1", "64", "512"})
+    public int oscillators;
+
+    private final float[] out = new float[BLOCK];
+    private double[] angles;
+    private double[] increments;
+    private OscillatorBank wavetable;
+    private OscillatorBank phasor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        angles = new double[oscillators];
+        increments = new double[oscillators];
+        wavetable = new OscillatorBank(SAMPLE_RATE, OscillatorBank.Mode.WAVETABLE);
+        phasor = new OscillatorBank(SAMPLE_RATE, OscillatorBank.Mode.PHASOR);
+        float gain = 1.0f / oscillators;
+        for (int i = 0; i < oscillators; i++) {
+            double frequency = 110.0 + 13.7 * i;
+            increments[i] = 2 * Math.PI * frequency / SAMPLE_RATE;
+            wavetable.add(frequency, 0.0, gain);
+            phasor.add(frequency, 0.0, gain);
+        }
+    }
+
+    @Benchmark
+    public float[] mathSin() {
+        Arrays.fill(out, 0.0f);
+        float gain = 1.0f / oscillators;
+        for (int osc = 0; osc < oscillators; osc++) {
+            double angle = angles[osc];
+            double increment = increments[osc];
+            for (int i = 0; i < BLOCK; i++) {
+                out[i] += gain * (float) Math.sin(angle);
+                angle += increment;
+            }
+            angles[osc] = angle;
+        }
+        return out;
+    }
+
+    @Benchmark
+    public float[] wavetable() {
+        wavetable.render(out, 0, BLOCK);
+        return out;
+    }
+
+    @Benchmark
+    public float[] phasor() {
+        phasor.render(out, 0, BLOCK);
+        return out;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * {@link KeyValueIndex} kept in primitive arrays: sorted {@code int} keys plus
+ * the offset and length of every value inside the original input bytes. The
+ * values are never copied out of the input until somebody asks for them.
+ *
+ * @author pc
+ */
+public class ArrayKeyValueIndex implements KeyValueIndex {
+
+    final MemorySegment data;
+    final int[] keys;
+    final long[] offsets;
+    final int[] lengths;
+    final int size;
+
+    ArrayKeyValueIndex(MemorySegment data, int[] keys, long[] offsets, int[] lengths, int size) {
+        this.data = data;
+        this.keys = keys;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int keyAt(int position) {
+        return keys[position];
+    }
+
+    @Override
+    public String valueAt(int position) {
+        byte[] bytes = new byte[lengths[position]];
+        MemorySegment.copy(data, ValueLayout.JAVA_BYTE, offsets[position], bytes, 0, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public MemorySegment valueBytes(int position) {
+        return data.asSlice(offsets[position], lengths[position]);
+    }
+
+    @Override
+    public int indexOf(int key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    @Override
+    public String toString() {
+        return KeyValueIndex.format(this);
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sound.sampled.AudioFormat;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * How close a generator is to underrunning its line. The generator thread
+ * records how long each block took to generate; {@link LineSink}, on
+ * whatever thread writes to the line, records how long {@code line.write}
+ * blocked, how full the line buffer was, whether it had run dry, and how far
+ * the line's frame position drifted from the frames written.
+ * <p>
+ * Everything goes into {@link LogHistogram}s and counters with a single
+ * writer each, so recording costs a few stores per block. The same numbers
+ * are published as a {@link AudioMetricsMXBean} under
+ * {@code net.test.local.simple.codigo:type=AudioMetrics,name=<name>}, and
+ * every block is also a JFR event ({@code net.test.local.simple.codigo.AudioGeneration}
+ * and {@code net.test.local.simple.codigo.AudioLineWrite}) when a recording
+ * has them enabled.
+ *
+ * @author pc
+ */
+public class AudioMetrics implements AudioMetricsMXBean, AutoCloseable {
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Generator slots
+    private static final int FRAMES_GENERATED = 0;
+    // Line slots, 128 bytes away
+    private static final int UNDERRUNS = 16;
+    private static final int FILL = 17;
+    private static final int BUFFER = 18;
+    private static final int DRIFT = 19;
+    private static final int MAX_DRIFT = 20;
+
+    // Which instance owns each registered name; guarded by the class
+    private static final Map<ObjectName, AudioMetrics> REGISTERED = new HashMap<>();
+
+    private final String name;
+    private final AudioFormat format;
+    private final LogHistogram generation = new LogHistogram();
+    private final LogHistogram writeBlocking = new LogHistogram();
+    private final LogHistogram fill = new LogHistogram();
+    private final long[] slots = new long[21];
+    private ObjectName objectName;
+
+    public AudioMetrics(String name, AudioFormat format) {
+        this.name = name;
+        this.format = format;
+    }
+
+    /**
+     * Creates metrics and registers them with the platform MBean server,
+     * replacing an earlier registration of the same name; closing the
+     * replaced instance later leaves the new registration alone. A failure
+     * to register is reported and otherwise ignored.
+     */
+    public static AudioMetrics register(String name, AudioFormat format) {
+        AudioMetrics metrics = new AudioMetrics(name, format);
+        try {
+            ObjectName objectName = new ObjectName("net.test.local.simple.codigo:type=AudioMetrics,name=" + name);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            synchronized (AudioMetrics.class) {
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+                server.registerMBean(metrics, objectName);
+                REGISTERED.put(objectName, metrics);
+            }
+            metrics.objectName = objectName;
+        } catch (JMException e) {
+            System.err.println("No se pudieron registrar las métricas JMX: " + e.getMessage());
+        }
+        return metrics;
+    }
+
+    /**
+     * Generator thread only.
+     *
+     * @param startNanos {@code System.nanoTime()} when the block was started
+     * @param frames frames in the block
+     */
+    public void recordGeneration(long startNanos, int frames) {
+        long nanos = System.nanoTime() - startNanos;
+        generation.record(nanos);
+        SLOTS.setOpaque(slots, FRAMES_GENERATED, slots[FRAMES_GENERATED] + frames);
+        GenerationEvent event = new GenerationEvent();
+        if (event.shouldCommit()) {
+            event.source = name;
+            event.frames = frames;
+            event.generationTime = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Line writer thread only.
+     *
+     * @param frames frames in the write
+     * @param blockedNanos time spent in {@code line.write}
+     * @param fillFrames frames queued on the line just before the write
+     * @param bufferFrames line buffer size
+     * @param underrun whether the line had run dry
+     * @param drift frames written minus played minus queued
+     */
+    public void recordLineWrite(int frames, long blockedNanos, int fillFrames, int bufferFrames, boolean underrun, long drift) {
+        writeBlocking.record(blockedNanos);
+        fill.record(fillFrames);
+        SLOTS.setOpaque(slots, FILL, (long) fillFrames);
+        SLOTS.setOpaque(slots, BUFFER, (long) bufferFrames);
+        SLOTS.setOpaque(slots, DRIFT, drift);
+        if (Math.abs(drift) > Math.abs(slots[MAX_DRIFT])) {
+            SLOTS.setOpaque(slots, MAX_DRIFT, drift);
+        }
+        if (underrun) {
+            SLOTS.setOpaque(slots, UNDERRUNS, slots[UNDERRUNS] + 1);
+        }
+        LineWriteEvent event = new LineWriteEvent();
+        if (event.shouldCommit()) {
+            event.source = name;
+            event.frames = frames;
+            event.blockedTime = blockedNanos;
+            event.fillFrames = fillFrames;
+            event.bufferFrames = bufferFrames;
+            event.underrun = underrun;
+            event.drift = drift;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return a one line summary in the style of {@link PcmSink#report()}
+     */
+    public String report() {
+        String report = String.format("generación: media %.0f µs, p99 ≤ %d µs, máx %d µs, %.4f del tiempo real",
+                getGenerationMeanMicros(), getGenerationP99Micros(), getGenerationMaxMicros(),
+                getGenerationRealTimeFactor());
+        if (getLineWrites() == 0) {
+            return report;
+        }
+        return report + String.format("; línea: escritura p99 ≤ %d µs, máx %d µs, llenado mín %d de %d frames, "
+                + "%d subdesbordes, deriva %d frames (máx %d)",
+                getWriteBlockingP99Micros(), getWriteBlockingMaxMicros(), getFillMinFrames(),
+                getLineBufferFrames(), getUnderruns(), getFramePositionDrift(), getMaxFramePositionDrift());
+    }
+
+    /**
+     * Unregisters the MBean, if it was registered and no later instance has
+     * replaced it.
+     */
+    @Override
+    public void close() {
+        if (objectName != null) {
+            synchronized (AudioMetrics.class) {
+                if (REGISTERED.remove(objectName, this)) {
+                    try {
+                        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+                    } catch (JMException e) {
+                        // Already gone
+                    }
+                }
+            }
+            objectName = null;
+        }
+    }
+
+    // ---- AudioMetricsMXBean ----
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getFormat() {
+        return format.toString();
+    }
+
+    @Override
+    public long getBlocksGenerated() {
+        return generation.count();
+    }
+
+    @Override
+    public double getGenerationMeanMicros() {
+        return generation.mean() / 1000;
+    }
+
+    @Override
+    public long getGenerationP99Micros() {
+        return generation.percentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getGenerationMaxMicros() {
+        return generation.max() / 1000;
+    }
+
+    @Override
+    public double getGenerationRealTimeFactor() {
+        long frames = (long) SLOTS.getOpaque(slots, FRAMES_GENERATED);
+        return frames == 0 ? 0 : generation.sum() / (frames / (double) format.getFrameRate() * 1e9);
+    }
+
+    @Override
+    public long getLineWrites() {
+        return writeBlocking.count();
+    }
+
+    @Override
+    public long getWriteBlockingP99Micros() {
+        return writeBlocking.percentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getWriteBlockingMaxMicros() {
+        return writeBlocking.max() / 1000;
+    }
+
+    @Override
+    public long getLineBufferFrames() {
+        return (long) SLOTS.getOpaque(slots, BUFFER);
+    }
+
+    @Override
+    public long getFillFrames() {
+        return (long) SLOTS.getOpaque(slots, FILL);
+    }
+
+    @Override
+    public long getFillMinFrames() {
+        return fill.min();
+    }
+
+    @Override
+    public long getFillP1Frames() {
+        return fill.percentile(0.01);
+    }
+
+    @Override
+    public long getUnderruns() {
+        return (long) SLOTS.getOpaque(slots, UNDERRUNS);
+    }
+
+    @Override
+    public long getFramePositionDrift() {
+        return (long) SLOTS.getOpaque(slots, DRIFT);
+    }
+
+    @Override
+    public long getMaxFramePositionDrift() {
+        return (long) SLOTS.getOpaque(slots, MAX_DRIFT);
+    }
+
+    @Override
+    public long[] getGenerationHistogram() {
+        return generation.buckets();
+    }
+
+    @Override
+    public long[] getWriteBlockingHistogram() {
+        return writeBlocking.buckets();
+    }
+
+    @Override
+    public long[] getFillHistogram() {
+        return fill.buckets();
+    }
+
+    @Name("net.test.local.simple.codigo.AudioGeneration")
+    @Label("Audio Generation")
+    @Category("Audio")
+    @Description("One block of samples generated")
+    @StackTrace(false)
+    static final class GenerationEvent extends Event {
+
+        @Label("Source")
+        String source;
+
+        @Label("Frames")
+        int frames;
+
+        @Label("Generation Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long generationTime;
+    }
+
+    @Name("net.test.local.simple.codigo.AudioLineWrite")
+    @Label("Audio Line Write")
+    @Category("Audio")
+    @Description("One block written to a SourceDataLine")
+    @StackTrace(false)
+    static final class LineWriteEvent extends Event {
+
+        @Label("Source")
+        String source;
+
+        @Label("Frames")
+        int frames;
+
+        @Label("Blocked Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long blockedTime;
+
+        @Label("Fill")
+        @Description("Frames queued on the line before the write")
+        int fillFrames;
+
+        @Label("Buffer")
+        int bufferFrames;
+
+        @Label("Underrun")
+        boolean underrun;
+
+        @Label("Frame Position Drift")
+        long drift;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+/**
+ * JMX view of an {@link AudioMetrics}. Times are in microseconds, levels in
+ * frames; histograms are power-of-two buckets as in {@link LogHistogram}.
+ *
+ * @author pc
+ */
+public interface AudioMetricsMXBean {
+
+    String getName();
+
+    String getFormat();
+
+    long getBlocksGenerated();
+
+    double getGenerationMeanMicros();
+
+    long getGenerationP99Micros();
+
+    long getGenerationMaxMicros();
+
+    /**
+     * @return generation time over play time, averaged over all blocks
+     */
+    double getGenerationRealTimeFactor();
+
+    long getLineWrites();
+
+    long getWriteBlockingP99Micros();
+
+    long getWriteBlockingMaxMicros();
+
+    long getLineBufferFrames();
+
+    /**
+     * @return frames queued on the line before the most recent write
+     */
+    long getFillFrames();
+
+    long getFillMinFrames();
+
+    long getFillP1Frames();
+
+    /**
+     * @return writes that found the line buffer empty
+     */
+    long getUnderruns();
+
+    /**
+     * @return frames written minus frames played minus frames queued, at
+     * the most recent write
+     */
+    long getFramePositionDrift();
+
+    long getMaxFramePositionDrift();
+
+    long[] getGenerationHistogram();
+
+    long[] getWriteBlockingHistogram();
+
+    long[] getFillHistogram();
+}
@@ -0,0 +1,122 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Decodes many puzzle files in one JVM. Every file gets its own virtual
+ * thread, like the {@code MessageLoop} in {@link SimpleThreads}, and a
+ * semaphore bounds how many of them are reading at once. Results come back
+ * in input order whatever order the threads finish in.
+ *
+ * @author pc
+ */
+public class BatchDecoder {
+
+    /**
+     * Outcome for one file: its row ends, or the error that stopped it.
+     */
+    public record Result(Path file, KeyValueIndex rowEnds, IOException error) {
+    }
+
+    private final Semaphore ioPermits;
+    private final MappedInputParser parser = new MappedInputParser();
+
+    /**
+     * @param ioConcurrency maximum number of files read at the same time
+     */
+    public BatchDecoder(int ioConcurrency) {
+        if (ioConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrencia inválida: " + ioConcurrency);
+        }
+        this.ioPermits = new Semaphore(ioConcurrency);
+    }
+
+    /**
+     * Expands the arguments into input files: a directory stands for the
+     * regular files directly inside it, sorted by name; anything else is
+     * taken as a file.
+     */
+    public static List<Path> inputs(List<Path> paths) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> entries = Files.list(path)) {
+                    entries.filter(Files::isRegularFile).sorted().forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Decodes every file, one virtual thread each.
+     *
+     * @param files inputs
+     * @return one result per input, in the same order
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public List<Result> decodeAll(List<Path> files) throws InterruptedException {
+        List<Future<Result>> pending = new ArrayList<>(files.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path file : files) {
+                pending.add(executor.submit(() -> decode(file)));
+            }
+            List<Result> results = new ArrayList<>(files.size());
+            for (Future<Result> future : pending) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // decode() reports I/O errors in its result; this is a bug
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Writes all results, each preceded by a {@code # file} line. Failed
+     * files are reported on {@code System.err}.
+     */
+    public static void write(List<Result> results, DecodeWriter out, DecodeWriter.Layout layout) throws IOException {
+        for (Result result : results) {
+            out.writeAscii("# ").writeUtf8(result.file().toString()).newLine();
+            if (result.error() != null) {
+                System.err.println("Error leyendo archivo " + result.file() + ": " + result.error().getMessage());
+            } else {
+                out.writeMessage(result.rowEnds(), layout);
+            }
+        }
+    }
+
+    private Result decode(Path file) throws InterruptedException {
+        ioPermits.acquire();
+        // The mapping is released as soon as the row ends are copied out, so
+        // thousands of files never hold thousands of mappings
+        try (Arena arena = Arena.ofConfined()) {
+            KeyValueIndex rowEnds = PyramidDecoder.rowEnds(parser.parse(file, arena));
+            return new Result(file, rowEnds, null);
+        } catch (IOException e) {
+            return new Result(file, null, e);
+        } finally {
+            ioPermits.release();
+        }
+    }
+}
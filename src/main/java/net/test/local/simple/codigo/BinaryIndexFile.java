@@ -0,0 +1,192 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+
+/**
+ * Pre-sorted binary form of a {@code number word} text file, so repeated
+ * decodes can map it and start reading instead of parsing and sorting again.
+ * <p>
+ * Layout, little-endian:
+ * <pre>
+ *  0  int   magic 'SCX1'
+ *  4  int   version
+ *  8  int   entry count n
+ * 12  int   reserved
+ * 16  long  size of the source text
+ * 24  long  last-modified time of the source text, in milliseconds
+ * 32  long  heap size in bytes
+ * 40  int[n]      sorted keys
+ *     long[n + 1] value offsets into the heap, 8-byte aligned
+ *     byte[]      UTF-8 heap with every value, in key order
+ * </pre>
+ *
+ * @author pc
+ */
+public class BinaryIndexFile {
+
+    static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    static final int MAGIC = 'S' | 'C' << 8 | 'X' << 16 | '1' << 24;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 40;
+
+    /**
+     * Default location of the compiled index for a text file.
+     */
+    public static Path indexPathFor(Path source) {
+        return source.resolveSibling(source.getFileName() + ".idx");
+    }
+
+    /**
+     * Parses a text file and writes its binary index. The file is written
+     * next to the target and moved into place, so a reader never sees a half
+     * written index.
+     *
+     * @param source text input
+     * @param target binary file to create or replace
+     * @param parser parser used to read {@code source}
+     * @return the index that was written, backed by the source mapping
+     * @throws IOException if reading or writing fails
+     */
+    public static KeyValueIndex compile(Path source, Path target, MappedInputParser parser) throws IOException {
+        // Take the stamp first: if the source changes while compiling, the
+        // result is stale rather than silently inconsistent
+        long sourceSize = Files.size(source);
+        long sourceModified = Files.getLastModifiedTime(source).toMillis();
+        KeyValueIndex index = parser.parse(source);
+
+        int n = index.size();
+        long heapSize = 0;
+        for (int i = 0; i < n; i++) {
+            heapSize += index.valueBytes(i).byteSize();
+        }
+        long offsetsStart = offsetsStart(n);
+        long heapStart = offsetsStart + 8L * (n + 1);
+
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (Arena arena = Arena.ofConfined();
+                    FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MemorySegment out = channel.map(FileChannel.MapMode.READ_WRITE, 0, heapStart + heapSize, arena);
+                out.set(INT, 0, MAGIC);
+                out.set(INT, 4, VERSION);
+                out.set(INT, 8, n);
+                out.set(INT, 12, 0);
+                out.set(LONG, 16, sourceSize);
+                out.set(LONG, 24, sourceModified);
+                out.set(LONG, 32, heapSize);
+
+                long heapOffset = 0;
+                for (int i = 0; i < n; i++) {
+                    MemorySegment value = index.valueBytes(i);
+                    out.set(INT, HEADER_SIZE + 4L * i, index.keyAt(i));
+                    out.set(LONG, offsetsStart + 8L * i, heapOffset);
+                    MemorySegment.copy(value, 0, out, heapStart + heapOffset, value.byteSize());
+                    heapOffset += value.byteSize();
+                }
+                out.set(LONG, offsetsStart + 8L * n, heapOffset);
+                out.force();
+            }
+            // The temporary file is private to its creator; share the index like its source
+            PosixFileAttributeView sourceView = Files.getFileAttributeView(source, PosixFileAttributeView.class);
+            if (sourceView != null) {
+                Files.setPosixFilePermissions(temp, sourceView.readAttributes().permissions());
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return index;
+    }
+
+    /**
+     * Maps a binary index. Only the header is validated; opening does not
+     * touch the key, offset or value pages.
+     *
+     * @param file binary index
+     * @return an index reading from the mapping
+     * @throws IOException if the file is not a valid index
+     */
+    public static KeyValueIndex load(Path file) throws IOException {
+        MemorySegment data = MappedInputParser.map(file);
+        if (data.byteSize() < HEADER_SIZE || data.get(INT, 0) != MAGIC) {
+            throw new IOException("No es un índice binario: " + file);
+        }
+        if (data.get(INT, 4) != VERSION) {
+            throw new IOException("Versión de índice no soportada: " + data.get(INT, 4));
+        }
+        int n = data.get(INT, 8);
+        long heapSize = data.get(LONG, 32);
+        long offsetsStart = offsetsStart(n);
+        long heapStart = offsetsStart + 8L * (n + 1);
+        if (n < 0 || heapSize < 0 || heapStart + heapSize != data.byteSize()) {
+            throw new IOException("Índice binario truncado: " + file);
+        }
+        return new MappedKeyValueIndex(
+                data.asSlice(HEADER_SIZE, 4L * n),
+                data.asSlice(offsetsStart, 8L * (n + 1)),
+                data.asSlice(heapStart, heapSize),
+                n);
+    }
+
+    /**
+     * @param file binary index
+     * @param source text it was compiled from
+     * @return whether the index is missing, unreadable or was compiled from
+     * a different version of {@code source}
+     */
+    public static boolean isStale(Path file, Path source) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return true;
+            }
+            MemorySegment header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE, Arena.ofAuto());
+            return header.get(INT, 0) != MAGIC
+                    || header.get(INT, 4) != VERSION
+                    || header.get(LONG, 16) != Files.size(source)
+                    || header.get(LONG, 24) != Files.getLastModifiedTime(source).toMillis();
+        }
+    }
+
+    /**
+     * Loads the index next to {@code source}, compiling it first when it is
+     * missing or stale.
+     *
+     * @param source text input
+     * @param parser parser used if a compile is needed
+     * @return the sorted index
+     * @throws IOException if reading or writing fails
+     */
+    public static KeyValueIndex open(Path source, MappedInputParser parser) throws IOException {
+        Path file = indexPathFor(source);
+        if (isStale(file, source)) {
+            return compile(source, file, parser);
+        }
+        return load(file);
+    }
+
+    private static long offsetsStart(int n) {
+        return (HEADER_SIZE + 4L * n + 7) & ~7L;
+    }
+
+    private BinaryIndexFile() {
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Puts a {@link PcmRingBuffer} and a writer thread in front of another sink,
+ * so the generator thread never blocks in {@code line.write} and a pause in
+ * generation (GC, a slow block) is absorbed by the ring instead of turning
+ * into a gap on the line. The writer thread runs at maximum priority and
+ * moves one block at a time.
+ *
+ * @author pc
+ */
+public class BufferedPcmSink implements PcmSink {
+
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final PcmSink downstream;
+    private final PcmRingBuffer ring;
+    private final Thread writer;
+    private final int blockBytes;
+    private volatile IOException failure;
+    // Written by the writer thread only: frames handed to downstream so far
+    private volatile long framesStored;
+    private volatile Thread drainer;
+
+    /**
+     * Ring with the usual watermarks: the generator pauses at 3/4 full and
+     * resumes at 1/2.
+     *
+     * @param capacityFrames ring size in frames, rounded up to a power of
+     * two like every {@link PcmRingBuffer}
+     */
+    public BufferedPcmSink(PcmSink downstream, int capacityFrames) {
+        this(downstream, blockingRing(downstream.format().getFrameSize(), PcmRingBuffer.capacityFor(capacityFrames)),
+                Math.max(1, PcmRingBuffer.capacityFor(capacityFrames) / 8));
+    }
+
+    /**
+     * @param blockFrames frames handed to {@code downstream} per write
+     */
+    public BufferedPcmSink(PcmSink downstream, PcmRingBuffer ring, int blockFrames) {
+        this.downstream = downstream;
+        this.ring = ring;
+        this.blockBytes = blockFrames * ring.frameSize();
+        this.writer = new Thread(this::drainRing, "pcm-writer");
+        writer.setPriority(Thread.MAX_PRIORITY);
+        writer.start();
+    }
+
+    // Watermarks from the real capacity, not the requested one
+    private static PcmRingBuffer blockingRing(int frameSize, int capacity) {
+        return new PcmRingBuffer(frameSize, capacity, capacity * 3 / 4, capacity / 2,
+                PcmRingBuffer.Backpressure.BLOCK);
+    }
+
+    public PcmRingBuffer ring() {
+        return ring;
+    }
+
+    @Override
+    public AudioFormat format() {
+        return downstream.format();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        checkFailure();
+        try {
+            ring.write(data, offset, length);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrumpido escribiendo audio");
+        } catch (IllegalStateException e) {
+            throw writerFailure(e);
+        }
+    }
+
+    @Override
+    public void write(PcmBuffer buffer) throws IOException {
+        checkFailure();
+        try {
+            ring.write(buffer.data());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrumpido escribiendo audio");
+        } catch (IllegalStateException e) {
+            throw writerFailure(e);
+        }
+    }
+
+    /**
+     * Waits until the writer thread has handed every frame written so far to
+     * the downstream sink and is back waiting on the empty ring, then drains
+     * the downstream sink. Producer thread only.
+     */
+    @Override
+    public void drain() throws IOException {
+        long target = ring.framesWritten();
+        drainer = Thread.currentThread();
+        try {
+            // The timed park covers a wakeup racing with this check
+            while (framesStored < target && writer.isAlive()) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrumpido vaciando audio");
+                }
+            }
+        } finally {
+            drainer = null;
+        }
+        checkFailure();
+        downstream.drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        ring.close();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrumpido cerrando audio");
+        } finally {
+            downstream.close();
+        }
+        checkFailure();
+    }
+
+    @Override
+    public String report() {
+        String ringReport = String.format("anillo: %d subdesbordes, %d desbordes (%d frames perdidos), %d esperas",
+                ring.underruns(), ring.overruns(), ring.droppedFrames(), ring.producerWaits());
+        String inner = downstream.report();
+        return inner == null ? ringReport : inner + "; " + ringReport;
+    }
+
+    private void drainRing() {
+        byte[] block = new byte[blockBytes];
+        boolean finished = false;
+        try {
+            int n;
+            while ((n = ring.read(block, 0, block.length)) > 0) {
+                downstream.write(block, 0, n);
+                framesStored += n / ring.frameSize();
+                Thread waiting = drainer;
+                if (waiting != null) {
+                    LockSupport.unpark(waiting);
+                }
+            }
+            finished = true;
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Escritor de audio interrumpido");
+        } catch (RuntimeException | Error e) {
+            failure = new IOException("Error escribiendo audio: " + e, e);
+            throw e;
+        } finally {
+            // Nothing reads the ring any more; wake a producer waiting for room
+            if (!finished) {
+                ring.fail();
+            }
+        }
+    }
+
+    // The writer's error, once the ring reports that the writer is gone
+    private IOException writerFailure(IllegalStateException e) {
+        IOException cause = failure;
+        return cause != null ? cause : new IOException("Error escribiendo audio: " + e.getMessage(), e);
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw e;
+        }
+    }
+}
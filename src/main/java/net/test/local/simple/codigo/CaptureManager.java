@@ -0,0 +1,298 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.awt.BorderLayout;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.TargetDataLine;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
+
+/**
+ * Meters every capture line of every mixer at once. {@link #discover()}
+ * lists the {@code TargetDataLine}s of {@code AudioSystem.getMixerInfo()}
+ * with a format each one accepts; {@link #start()} gives each its own
+ * virtual thread that reads the line, runs a {@link LevelMeterDsp} and
+ * publishes every channel into a {@link MeterSlot}, for a
+ * {@link MultiMeterPanel} or anything else to display.
+ * <p>
+ * Lines are opened by their own thread, so a device that fails only
+ * disables its meters. The loops never block inside {@code read}: they read
+ * what the line already holds and sleep otherwise, so a virtual thread
+ * waiting for audio does not hold on to its carrier thread.
+ * {@link #stop()} ends every loop, closes the lines and waits for the
+ * threads; the manager can be started again afterwards.
+ *
+ * @author pc
+ */
+public class CaptureManager implements AutoCloseable {
+
+    // Audio read per pass, which is also how often meters update
+    static final int BLOCK_MILLIS = 20;
+
+    // Tried in order against each line
+    private static final float[] RATES = {48000f, 44100f};
+    private static final int[] CHANNELS = {2, 1};
+
+    /**
+     * Opens nothing yet: returns the line, {@link CaptureManager} opens it.
+     */
+    interface LineSource {
+
+        TargetDataLine get() throws LineUnavailableException;
+    }
+
+    /**
+     * One capture line and the slots its meters publish to.
+     */
+    public static final class Input {
+
+        private final String name;
+        private final AudioFormat format;
+        private final LineSource source;
+        private final MeterSlot[] slots;
+        private volatile String error;
+
+        Input(String name, AudioFormat format, LineSource source) {
+            this.name = name;
+            this.format = format;
+            this.source = source;
+            this.slots = new MeterSlot[format.getChannels()];
+            for (int c = 0; c < slots.length; c++) {
+                slots[c] = new MeterSlot();
+            }
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public AudioFormat format() {
+            return format;
+        }
+
+        public int channels() {
+            return slots.length;
+        }
+
+        /**
+         * @return VU and peak hold of {@code channel}
+         */
+        public MeterSlot slot(int channel) {
+            return slots[channel];
+        }
+
+        /**
+         * @return why the line could not be captured, or {@code null}
+         */
+        public String error() {
+            return error;
+        }
+    }
+
+    private final List<Input> inputs;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    public CaptureManager(List<Input> inputs) {
+        this.inputs = List.copyOf(inputs);
+    }
+
+    /**
+     * @return a manager for every capture line found
+     */
+    public static CaptureManager forAllInputs() {
+        return new CaptureManager(discover());
+    }
+
+    /**
+     * Lists the capture lines of every mixer. Lines that take none of the
+     * usual PCM formats are reported and left out.
+     */
+    public static List<Input> discover() {
+        List<Input> found = new ArrayList<>();
+        for (Mixer.Info mixerInfo : AudioSystem.getMixerInfo()) {
+            Mixer mixer = AudioSystem.getMixer(mixerInfo);
+            List<DataLine.Info> lines = new ArrayList<>();
+            for (Line.Info info : mixer.getTargetLineInfo()) {
+                if (info instanceof DataLine.Info dataInfo
+                        && TargetDataLine.class.isAssignableFrom(dataInfo.getLineClass())) {
+                    lines.add(dataInfo);
+                }
+            }
+            for (int i = 0; i < lines.size(); i++) {
+                DataLine.Info info = lines.get(i);
+                String name = lines.size() == 1 ? mixerInfo.getName() : mixerInfo.getName() + " #" + (i + 1);
+                AudioFormat format = chooseFormat(info);
+                if (format == null) {
+                    System.out.println("Formato no soportado: " + name);
+                    continue;
+                }
+                DataLine.Info exact = new DataLine.Info(TargetDataLine.class, format);
+                found.add(new Input(name, format, () -> (TargetDataLine) mixer.getLine(exact)));
+            }
+        }
+        return found;
+    }
+
+    // 16-bit PCM, preferring stereo and 48 kHz, in whichever byte order the line takes
+    private static AudioFormat chooseFormat(DataLine.Info info) {
+        for (float rate : RATES) {
+            for (int channels : CHANNELS) {
+                for (boolean bigEndian : new boolean[]{false, true}) {
+                    AudioFormat format = new AudioFormat(rate, 16, channels, true, bigEndian);
+                    if (info.isFormatSupported(format)) {
+                        return format;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    public List<Input> inputs() {
+        return inputs;
+    }
+
+    /**
+     * Starts one capture thread per input. Does nothing if already running.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (Input input : inputs) {
+            threads.add(Thread.ofVirtual()
+                    .name("captura-" + input.name)
+                    .start(() -> capture(input)));
+        }
+    }
+
+    /**
+     * Ends every capture loop and waits until the lines are closed.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    // Still wait for the lines to close
+                    interrupted = true;
+                }
+            }
+        }
+        threads.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    private void capture(Input input) {
+        AudioFormat format = input.format;
+        int frameSize = format.getFrameSize();
+        int blockFrames = Math.max(1, (int) (format.getFrameRate() * BLOCK_MILLIS / 1000));
+        TargetDataLine line;
+        try {
+            line = input.source.get();
+            // Room for several blocks, so a late wake-up loses nothing
+            line.open(format, blockFrames * frameSize * 8);
+        } catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            input.error = e.getMessage();
+            System.out.println("Inhabilitada: " + input.name + ": " + e.getMessage());
+            return;
+        }
+        input.error = null;
+        try {
+            line.start();
+            LevelMeterDsp meter = new LevelMeterDsp(format);
+            byte[] buffer = new byte[blockFrames * frameSize];
+            long pauseMillis = Math.max(1, BLOCK_MILLIS / 2);
+            while (running) {
+                int available = Math.min(buffer.length, line.available() / frameSize * frameSize);
+                if (available < buffer.length) {
+                    Thread.sleep(pauseMillis);
+                    continue;
+                }
+                int bytesRead = line.read(buffer, 0, available);
+                if (bytesRead > 0) {
+                    meter.process(buffer, 0, bytesRead);
+                    for (int c = 0; c < input.slots.length; c++) {
+                        input.slots[c].publish(meter.vu(c), meter.peakHold(c));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // stop() interrupts the sleep; running is already false
+        } finally {
+            line.stop();
+            line.close();
+            for (MeterSlot slot : input.slots) {
+                slot.publish(0, 0);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        CaptureManager manager = CaptureManager.forAllInputs();
+        MeterRefresher refresher = new MeterRefresher();
+        SwingUtilities.invokeLater(() -> {
+            JFrame frame = new JFrame("Entradas de audio");
+            frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+            MultiMeterPanel panel = new MultiMeterPanel(refresher);
+            for (Input input : manager.inputs()) {
+                for (int c = 0; c < input.channels(); c++) {
+                    String title = input.channels() == 1 ? input.name() : input.name() + " " + (c + 1);
+                    panel.addMeter(title, input.slot(c));
+                }
+            }
+            if (manager.inputs().isEmpty()) {
+                frame.add(new JLabel("Sin entradas de audio", JLabel.CENTER), BorderLayout.CENTER);
+            } else {
+                frame.add(panel, BorderLayout.CENTER);
+            }
+            frame.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosed(WindowEvent e) {
+                    refresher.stop();
+                    manager.close();
+                }
+            });
+            frame.setSize(Math.max(240, 124 * panel.getComponentCount()), 400);
+            frame.setVisible(true);
+            refresher.start();
+            manager.start();
+        });
+    }
+}
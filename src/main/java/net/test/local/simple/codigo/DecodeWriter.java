@@ -0,0 +1,273 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Output stage for decode results. Text is encoded into one reusable direct
+ * buffer and handed to the channel only when the buffer fills up, so a large
+ * result costs a few big writes instead of one {@code PrintStream} call (and
+ * lock) per entry. Values are copied as the UTF-8 bytes they already are.
+ *
+ * @author pc
+ */
+public class DecodeWriter implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    // What println ends lines with
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * How decode results are laid out.
+     */
+    public enum Layout {
+        /**
+         * What {@code Simplecodigo} always printed: every word followed by a
+         * tab, and each row closed by its last word in quotes.
+         */
+        HUMAN,
+        /**
+         * One line per row end: {@code row<TAB>key<TAB>word}.
+         */
+        COMPACT
+    }
+
+    private final WritableByteChannel channel;
+    private final boolean closeChannel;
+    private final ByteBuffer buffer;
+    private final MemorySegment bufferSegment;
+    private final byte[] digits = new byte[11];
+
+    DecodeWriter(WritableByteChannel channel, boolean closeChannel, int bufferSize) {
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.bufferSegment = MemorySegment.ofBuffer(buffer);
+    }
+
+    /**
+     * Writer for standard output. Closing it flushes but leaves stdout open.
+     * Anything already printed through {@code System.out} should be flushed
+     * before the first write.
+     */
+    public static DecodeWriter toStdout() {
+        FileChannel stdout = new FileOutputStream(FileDescriptor.out).getChannel();
+        return new DecodeWriter(stdout, false, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Writer that creates or truncates a file.
+     */
+    public static DecodeWriter toFile(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new DecodeWriter(channel, true, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Writes every entry as <code>{1=a, 2=b}</code> plus a line break, the
+     * format {@code println} of a {@code TreeMap} used.
+     */
+    public DecodeWriter writeIndex(KeyValueIndex index) throws IOException {
+        writeByte('{');
+        for (int i = 0; i < index.size(); i++) {
+            if (i > 0) {
+                writeByte(',').writeByte(' ');
+            }
+            writeInt(index.keyAt(i)).writeByte('=').write(index.valueBytes(i));
+        }
+        return writeByte('}').newLine();
+    }
+
+    /**
+     * Writes all entries split into pyramid rows. {@link Layout#COMPACT}
+     * leaves out everything but the row ends.
+     */
+    public DecodeWriter writeRows(KeyValueIndex index, Layout layout) throws IOException {
+        if (layout == Layout.COMPACT) {
+            return writeMessage(index, PyramidDecoder.positions(index), layout);
+        }
+        int k = 0, n = 0;
+        for (int i = 0; i < index.size(); i++) {
+            MemorySegment value = index.valueBytes(i);
+            write(value).writeByte('\t');
+            if (k != n) {
+                n++;
+            } else {
+                // A literal '\n', as Simplecodigo always printed it, not println
+                writeByte('"').write(value).writeByte('"').writeByte('\n');
+                k++;
+                n = 0;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes complete rows {@code firstRow..lastRow} (1-based, inclusive)
+     * and nothing of any row after them. Used to print a growing pyramid a
+     * few rows at a time.
+     */
+    public DecodeWriter writeRows(KeyValueIndex index, Layout layout, int firstRow, int lastRow) throws IOException {
+        for (int row = firstRow; row <= lastRow; row++) {
+            int end = (int) (PyramidDecoder.rowEnd(row) - 1);
+            if (layout == Layout.COMPACT) {
+                writeRowEnd(index, row, end);
+                continue;
+            }
+            for (int i = end - row + 1; i <= end; i++) {
+                write(index.valueBytes(i)).writeByte('\t');
+            }
+            // Same line end as the full HUMAN layout above
+            writeByte('"').write(index.valueBytes(end)).writeByte('"').writeByte('\n');
+        }
+        return this;
+    }
+
+    /**
+     * Same as {@link #writeMessage(KeyValueIndex, int[], Layout)} for an
+     * index that holds nothing but row ends, one per row, such as the result
+     * of {@link PyramidDecoder#rowEnds(KeyValueIndex)}.
+     */
+    public DecodeWriter writeMessage(KeyValueIndex rowEnds, Layout layout) throws IOException {
+        int[] positions = new int[rowEnds.size()];
+        Arrays.setAll(positions, i -> i);
+        return writeMessage(rowEnds, positions, layout);
+    }
+
+    /**
+     * Writes only the row ends found at {@code positions}, which hold the
+     * end of row 1, row 2, ... in order. {@link Layout#HUMAN} joins the words
+     * with spaces on a single line.
+     */
+    public DecodeWriter writeMessage(KeyValueIndex index, int[] positions, Layout layout) throws IOException {
+        for (int row = 1; row <= positions.length; row++) {
+            int position = positions[row - 1];
+            if (layout == Layout.COMPACT) {
+                writeRowEnd(index, row, position);
+            } else {
+                if (row > 1) {
+                    writeByte(' ');
+                }
+                write(index.valueBytes(position));
+            }
+        }
+        if (layout == Layout.HUMAN) {
+            newLine();
+        }
+        return this;
+    }
+
+    /**
+     * Writes ASCII text; other characters are replaced by {@code '?'}.
+     */
+    public DecodeWriter writeAscii(CharSequence text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            writeByte(c < 0x80 ? c : '?');
+        }
+        return this;
+    }
+
+    public DecodeWriter writeUtf8(String text) throws IOException {
+        return write(MemorySegment.ofArray(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public DecodeWriter writeInt(int value) throws IOException {
+        if (value == Integer.MIN_VALUE) {
+            return writeAscii("-2147483648");
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        int pos = digits.length;
+        do {
+            digits[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        ensure(digits.length - pos);
+        buffer.put(digits, pos, digits.length - pos);
+        return this;
+    }
+
+    /**
+     * Ends a line with {@code System.lineSeparator()}, as {@code println}
+     * does.
+     */
+    public DecodeWriter newLine() throws IOException {
+        ensure(LINE_SEPARATOR.length);
+        buffer.put(LINE_SEPARATOR);
+        return this;
+    }
+
+    public DecodeWriter writeByte(int b) throws IOException {
+        ensure(1);
+        buffer.put((byte) b);
+        return this;
+    }
+
+    /**
+     * Copies raw bytes. Blocks larger than the buffer go straight to the
+     * channel.
+     */
+    public DecodeWriter write(MemorySegment bytes) throws IOException {
+        long length = bytes.byteSize();
+        if (length > buffer.capacity()) {
+            flush();
+            ByteBuffer view = bytes.asByteBuffer();
+            while (view.hasRemaining()) {
+                channel.write(view);
+            }
+            return this;
+        }
+        ensure((int) length);
+        MemorySegment.copy(bytes, 0, bufferSegment, buffer.position(), length);
+        buffer.position(buffer.position() + (int) length);
+        return this;
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (closeChannel) {
+                channel.close();
+            }
+        }
+    }
+
+    private void writeRowEnd(KeyValueIndex index, int row, int position) throws IOException {
+        writeInt(row).writeByte('\t').writeInt(index.keyAt(position)).writeByte('\t')
+                .write(index.valueBytes(position)).newLine();
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+}
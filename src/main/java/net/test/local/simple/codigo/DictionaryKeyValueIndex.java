@@ -0,0 +1,226 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * {@link KeyValueIndex} with dictionary-encoded values: every distinct word
+ * is stored once in a shared pool and each entry keeps only its {@code int}
+ * word id, so an entry costs eight bytes (key plus id) no matter how long the
+ * word is. Two entries hold the same word exactly when their ids are equal,
+ * which turns equality and grouping into integer work.
+ *
+ * @author pc
+ */
+public class DictionaryKeyValueIndex implements KeyValueIndex {
+
+    private final int[] keys;
+    private final int[] ids;
+    private final WordPool pool;
+
+    private DictionaryKeyValueIndex(int[] keys, int[] ids, WordPool pool) {
+        this.keys = keys;
+        this.ids = ids;
+        this.pool = pool;
+    }
+
+    /**
+     * Re-encodes any index. Words are interned straight from their bytes, so
+     * no {@code String} is created per entry.
+     *
+     * @param index sorted input
+     * @return the encoded copy; it no longer references the input storage
+     */
+    public static DictionaryKeyValueIndex encode(KeyValueIndex index) {
+        int n = index.size();
+        int[] keys = new int[n];
+        int[] ids = new int[n];
+        WordPool pool = new WordPool();
+        for (int i = 0; i < n; i++) {
+            keys[i] = index.keyAt(i);
+            ids[i] = pool.intern(index.valueBytes(i));
+        }
+        return new DictionaryKeyValueIndex(keys, ids, pool.trim());
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public int keyAt(int position) {
+        return keys[position];
+    }
+
+    @Override
+    public String valueAt(int position) {
+        return pool.word(ids[position]);
+    }
+
+    @Override
+    public MemorySegment valueBytes(int position) {
+        return pool.bytes(ids[position]);
+    }
+
+    @Override
+    public int indexOf(int key) {
+        return Arrays.binarySearch(keys, key);
+    }
+
+    /**
+     * @param position sorted position
+     * @return id of the word at that position, {@code 0 <= id < words()}
+     */
+    public int idAt(int position) {
+        return ids[position];
+    }
+
+    /**
+     * @return number of distinct words
+     */
+    public int words() {
+        return pool.size;
+    }
+
+    /**
+     * @param id word id
+     * @return the word, shared by every entry with that id
+     */
+    public String word(int id) {
+        return pool.word(id);
+    }
+
+    /**
+     * @return how many entries use each word id
+     */
+    public int[] countByWord() {
+        int[] counts = new int[pool.size];
+        for (int id : ids) {
+            counts[id]++;
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return KeyValueIndex.format(this);
+    }
+
+    /**
+     * Interning pool keyed by the UTF-8 bytes of each word. Lookups hash the
+     * candidate bytes and compare them against the pooled bytes in an open
+     * addressing table, so only new words allocate.
+     */
+    static class WordPool {
+
+        private byte[] heap = new byte[1024];
+        private int heapSize;
+        private int[] starts = new int[64];
+        private int[] hashes = new int[64];
+        private String[] words = new String[64];
+        private int size;
+        // Slot -> id + 1, 0 marks an empty slot
+        private int[] table = new int[128];
+
+        int intern(MemorySegment value) {
+            int length = (int) value.byteSize();
+            int hash = hash(value, length);
+            int mask = table.length - 1;
+            for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+                int entry = table[slot];
+                if (entry == 0) {
+                    int id = add(value, length, hash);
+                    table[slot] = id + 1;
+                    if (size * 2 > table.length) {
+                        rehash();
+                    }
+                    return id;
+                }
+                int id = entry - 1;
+                if (hashes[id] == hash && sameBytes(id, value, length)) {
+                    return id;
+                }
+            }
+        }
+
+        String word(int id) {
+            String word = words[id];
+            if (word == null) {
+                word = new String(heap, starts[id], starts[id + 1] - starts[id], StandardCharsets.UTF_8);
+                words[id] = word;
+            }
+            return word;
+        }
+
+        MemorySegment bytes(int id) {
+            return MemorySegment.ofArray(heap).asSlice(starts[id], starts[id + 1] - starts[id]);
+        }
+
+        WordPool trim() {
+            heap = Arrays.copyOf(heap, heapSize);
+            starts = Arrays.copyOf(starts, size + 1);
+            hashes = Arrays.copyOf(hashes, size);
+            words = Arrays.copyOf(words, size);
+            return this;
+        }
+
+        private int add(MemorySegment value, int length, int hash) {
+            if (heapSize + length > heap.length) {
+                heap = Arrays.copyOf(heap, Math.max(heap.length * 2, heapSize + length));
+            }
+            if (size + 2 > starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                hashes = Arrays.copyOf(hashes, starts.length);
+                words = Arrays.copyOf(words, starts.length);
+            }
+            MemorySegment.copy(value, ValueLayout.JAVA_BYTE, 0, heap, heapSize, length);
+            int id = size++;
+            starts[id] = heapSize;
+            hashes[id] = hash;
+            heapSize += length;
+            starts[size] = heapSize;
+            return id;
+        }
+
+        private boolean sameBytes(int id, MemorySegment value, int length) {
+            int start = starts[id];
+            if (starts[id + 1] - start != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (heap[start + i] != value.get(ValueLayout.JAVA_BYTE, i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int id = 0; id < size; id++) {
+                int slot = hashes[id] & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = id + 1;
+            }
+        }
+
+        private static int hash(MemorySegment value, int length) {
+            int h = 0;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + value.get(ValueLayout.JAVA_BYTE, i);
+            }
+            // Spread the low bits, the table is indexed by them
+            return h ^ (h >>> 16);
+        }
+    }
+}
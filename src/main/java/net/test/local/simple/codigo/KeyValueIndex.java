@@ -0,0 +1,84 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Interface.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Read-only view of {@code number word} entries sorted by ascending key, one
+ * entry per distinct key. Positions run from {@code 0} to {@code size() - 1}.
+ *
+ * @author pc
+ */
+public interface KeyValueIndex {
+
+    /**
+     * @return number of distinct keys in the index
+     */
+    int size();
+
+    /**
+     * @param position sorted position, {@code 0 <= position < size()}
+     * @return the key stored at that position
+     */
+    int keyAt(int position);
+
+    /**
+     * Decodes the value stored at a position. Allocates a new {@code String};
+     * hot loops should prefer {@link #valueBytes(int)}.
+     *
+     * @param position sorted position
+     * @return the value as text
+     */
+    String valueAt(int position);
+
+    /**
+     * @param position sorted position
+     * @return the UTF-8 bytes of the value, as a view over the backing storage
+     */
+    MemorySegment valueBytes(int position);
+
+    /**
+     * Binary search for a key.
+     *
+     * @param key key to look for
+     * @return its position, or {@code -(insertion point) - 1} when absent
+     */
+    default int indexOf(int key) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = keyAt(mid);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Formats an index the way {@code TreeMap.toString()} prints, e.g.
+     * <code>{1=a, 2=b}</code>.
+     *
+     * @param index index to format
+     * @return the formatted entries
+     */
+    static String format(KeyValueIndex index) {
+        int size = index.size();
+        StringBuilder sb = new StringBuilder(size * 12 + 2).append('{');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(index.keyAt(i)).append('=').append(index.valueAt(i));
+        }
+        return sb.append('}').toString();
+    }
+}
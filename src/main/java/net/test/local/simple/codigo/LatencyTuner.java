@@ -0,0 +1,214 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Low-latency mode for line sinks, enabled with
+ * {@code -Dsimplecodigo.latency=low}. The latency of a line is the audio
+ * queued on it, so instead of letting {@code line.write} fill the whole line
+ * buffer, the writer waits until the fill is below a target and writes one
+ * small block at a time. The line is opened with a buffer of up to
+ * {@value #MAX_TARGET_FRAMES} frames, which is only headroom: what is
+ * actually queued is the target.
+ * <p>
+ * At startup {@link #probe} writes silence with blocks of
+ * {@value #MIN_BLOCK_FRAMES}, 128, 256... frames and a target of two blocks,
+ * and keeps the first pair that plays for {@value #PROBE_MILLIS} ms without
+ * the line running dry. At runtime every underrun doubles the target, and
+ * every {@code simplecodigo.latency.stable} seconds (10 by default) without
+ * one brings it down by a quarter, never below what the probe found. The
+ * block size stays fixed so generators can size their buffers once.
+ * <p>
+ * One thread updates the tuner: the one writing to the line.
+ *
+ * @author pc
+ */
+public class LatencyTuner {
+
+    static final int MIN_BLOCK_FRAMES = 64;
+    static final int MAX_TARGET_FRAMES = 16384;
+    static final int PROBE_MILLIS = 300;
+
+    private final float frameRate;
+    private final int blockFrames;
+    private final int minTarget;
+    private final int maxTarget;
+    private final long stableNanos;
+    private volatile int target;
+    private volatile long grows;
+    private volatile long shrinks;
+    private long lastChange;
+
+    /**
+     * @param blockFrames frames per write
+     * @param target starting and smallest target fill, in frames
+     * @param maxTarget largest target fill, at most the line buffer
+     * @param stableNanos time without underruns before the target shrinks
+     */
+    public LatencyTuner(float frameRate, int blockFrames, int target, int maxTarget, long stableNanos) {
+        if (blockFrames < 1 || target < blockFrames || maxTarget < target) {
+            throw new IllegalArgumentException("Latencia inválida: bloque " + blockFrames + ", objetivo " + target + ", máximo " + maxTarget);
+        }
+        this.frameRate = frameRate;
+        this.blockFrames = blockFrames;
+        this.minTarget = target;
+        this.maxTarget = maxTarget;
+        this.stableNanos = stableNanos;
+        this.target = target;
+        this.lastChange = System.nanoTime();
+    }
+
+    /**
+     * @return whether {@code -Dsimplecodigo.latency=low} was given
+     */
+    public static boolean isRequested() {
+        return "low".equalsIgnoreCase(System.getProperty("simplecodigo.latency"));
+    }
+
+    /**
+     * Finds the smallest block and target that play without underruns on an
+     * open, started line, writing silence to it meanwhile.
+     *
+     * @return the tuner, or {@code null} if the line buffer is too small to
+     * hold two frames, which leaves nothing to pace
+     * @throws InterruptedIOException if interrupted while probing
+     */
+    public static LatencyTuner probe(SourceDataLine line) throws InterruptedIOException {
+        AudioFormat format = line.getFormat();
+        int frameSize = format.getFrameSize();
+        int maxTarget = Math.min(MAX_TARGET_FRAMES, line.getBufferSize() / frameSize);
+        if (maxTarget < 2) {
+            return null;
+        }
+        long stableNanos = TimeUnit.MILLISECONDS.toNanos((long) (1000 * Double.parseDouble(
+                System.getProperty("simplecodigo.latency.stable", "10"))));
+        byte[] silence = new byte[maxTarget * frameSize];
+        if (AudioFormat.Encoding.PCM_UNSIGNED.equals(format.getEncoding())) {
+            Arrays.fill(silence, (byte) 0x80);
+        }
+        int block = MIN_BLOCK_FRAMES;
+        for (; block * 2 < maxTarget; block *= 2) {
+            if (playsClean(line, silence, block, block * 2)) {
+                break;
+            }
+        }
+        block = Math.min(block, maxTarget / 2);
+        return new LatencyTuner(format.getFrameRate(), block, block * 2, maxTarget, stableNanos);
+    }
+
+    private static boolean playsClean(SourceDataLine line, byte[] silence, int block, int target) throws InterruptedIOException {
+        int frameSize = line.getFormat().getFrameSize();
+        long parkNanos = parkNanos(line.getFormat().getFrameRate(), block);
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROBE_MILLIS);
+        // The first writes only bring the fill to the new target; later ones must not find it dry
+        int writes = 0;
+        while (System.nanoTime() < end) {
+            boolean dry = awaitRoom(line, block, target, parkNanos) == 0;
+            if (dry && writes >= 2) {
+                return false;
+            }
+            writes++;
+            line.write(silence, 0, block * frameSize);
+        }
+        return true;
+    }
+
+    /**
+     * Waits until {@code frames} more frames fit under the current target.
+     *
+     * @return the frames still queued when it returns; 0 means the line ran
+     * dry
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public int awaitRoom(SourceDataLine line, int frames) throws InterruptedIOException {
+        return awaitRoom(line, frames, target, parkNanos(frameRate, blockFrames));
+    }
+
+    private static int awaitRoom(SourceDataLine line, int frames, int target, long parkNanos) throws InterruptedIOException {
+        int frameSize = line.getFormat().getFrameSize();
+        int bufferFrames = line.getBufferSize() / frameSize;
+        int fill;
+        while ((fill = bufferFrames - line.available() / frameSize) + frames > Math.max(target, frames)) {
+            LockSupport.parkNanos(parkNanos);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrumpido escribiendo audio");
+            }
+        }
+        return fill;
+    }
+
+    // A quarter of a block, so the writer wakes up well before the line runs dry
+    private static long parkNanos(float frameRate, int block) {
+        return Math.max(50_000L, (long) (block / frameRate * 1e9 / 4));
+    }
+
+    /**
+     * Adapts the target to one more write. Writer thread only.
+     *
+     * @param underrun whether the line was found empty
+     * @param nowNanos {@code System.nanoTime()}
+     */
+    public void update(boolean underrun, long nowNanos) {
+        int current = target;
+        if (underrun) {
+            // Give a bigger target the time to fill before growing again
+            if (current < maxTarget && nowNanos - lastChange > targetNanos(current)) {
+                target = Math.min(maxTarget, current * 2);
+                grows++;
+                lastChange = nowNanos;
+            }
+        } else if (current > minTarget && nowNanos - lastChange >= stableNanos) {
+            target = Math.max(minTarget, current - current / 4);
+            shrinks++;
+            lastChange = nowNanos;
+        }
+    }
+
+    private long targetNanos(int frames) {
+        return (long) (frames / frameRate * 1e9);
+    }
+
+    public int blockFrames() {
+        return blockFrames;
+    }
+
+    /**
+     * @return frames the writer currently keeps queued on the line
+     */
+    public int targetFrames() {
+        return target;
+    }
+
+    /**
+     * @return the target as latency
+     */
+    public double targetMillis() {
+        return target / frameRate * 1000;
+    }
+
+    public long grows() {
+        return grows;
+    }
+
+    public long shrinks() {
+        return shrinks;
+    }
+
+    /**
+     * @return a one line summary in the style of {@link PcmSink#report()}
+     */
+    public String report() {
+        return String.format("latencia baja: bloque %d frames, objetivo %d frames (%.1f ms), %d aumentos, %d reducciones",
+                blockFrames, targetFrames(), targetMillis(), grows(), shrinks());
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Level meter for blocks of captured PCM in any linear format: signed 8,
+ * 16, 24 or 32-bit, unsigned 8-bit, or 32/64-bit float, either byte order.
+ * Samples are read through {@code byteArrayViewVarHandle} views in the
+ * format's own order, so a big-endian line reads as big-endian.
+ * <p>
+ * One pass per channel over each block gives, all as linear full-scale
+ * values:
+ * <ul>
+ * <li>RMS and sample peak of the block;</li>
+ * <li>true peak of the block, from 4x oversampling with a 12-tap
+ * windowed-sinc interpolator per phase, in the spirit of ITU-R BS.1770
+ * (it lags by six samples);</li>
+ * <li>peak hold of the true peak, held for {@value #HOLD_MILLIS} ms, then
+ * falling like the PPM;</li>
+ * <li>VU ballistics: average-responding, reaching 99% of a step in 300
+ * ms, calibrated so a steady sine reads its RMS;</li>
+ * <li>PPM ballistics: quasi-peak with a 10 ms integration and a fall of
+ * 24 dB in 2.8 s (IEC 60268-10 type II).</li>
+ * </ul>
+ * The bytes of a channel are decoded once, feeding RMS, peak and the
+ * ballistics as they go, into a scratch array that the interpolator then
+ * runs over, with the Vector API when {@link PcmPacker} uses it. State and
+ * scratch are allocated up front and grow only for a larger block than any
+ * before, so in steady state {@link #process} allocates nothing. Instances
+ * are not thread safe.
+ *
+ * @author pc
+ */
+public class LevelMeterDsp {
+
+    static final int HOLD_MILLIS = 1500;
+
+    private static final int OVERSAMPLING = 4;
+    private static final int TAPS = 12;
+    // Samples before a block that the interpolator reads, see truePeak()
+    static final int TRUE_PEAK_HISTORY = TAPS - 1;
+    // Interpolation coefficients of phases 1..3; phase 0 is the sample
+    private static final float[][] PHASES = new float[OVERSAMPLING - 1][TAPS];
+    // Same switch as the packer: the incubator module, unless forced off
+    private static final boolean VECTORIZED = PcmPacker.VECTOR_AVAILABLE;
+    // RMS over rectified mean of a sine, pi / (2 sqrt 2)
+    private static final float SINE_FORM_FACTOR = (float) (Math.PI / (2 * Math.sqrt(2)));
+    // Values this small are flushed so decaying meters never go denormal
+    private static final float FLOOR = 1e-10f;
+
+    static {
+        for (int p = 1; p < OVERSAMPLING; p++) {
+            double fraction = p / (double) OVERSAMPLING;
+            double sum = 0;
+            for (int i = 0; i < TAPS; i++) {
+                // Tap i multiplies the sample TAPS/2 - i places after the one interpolated from
+                double t = fraction - (TAPS / 2 - i);
+                double sinc = Math.sin(Math.PI * t) / (Math.PI * t);
+                // Blackman window over the TAPS/2 samples on each side
+                double x = t / (TAPS / 2) * 0.5 + 0.5;
+                double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * x) + 0.08 * Math.cos(4 * Math.PI * x);
+                PHASES[p - 1][i] = (float) (sinc * window);
+                sum += sinc * window;
+            }
+            for (int i = 0; i < TAPS; i++) {
+                PHASES[p - 1][i] /= (float) sum;
+            }
+        }
+    }
+
+    private enum Kind {
+        SIGNED_8, UNSIGNED_8, SIGNED_16, SIGNED_24, SIGNED_32, FLOAT_32, FLOAT_64
+    }
+
+    private final Kind kind;
+    private final VarHandle view;
+    private final boolean bigEndian;
+    private final int channels;
+    private final int frameSize;
+    private final int sampleBytes;
+    private final float vuCoefficient;
+    private final float ppmAttack;
+    private final float fallPerFrame;
+    private final int holdFrames;
+
+    // Per channel: results of the last block and running state
+    private final float[] rms;
+    private final float[] samplePeak;
+    private final float[] truePeak;
+    private final float[] peakHold;
+    private final int[] holdLeft;
+    private final float[] vu;
+    private final float[] ppm;
+    // Last TAPS - 1 samples of each channel, for the interpolator
+    private final float[][] history;
+    // One channel of a block, after its history; grown to the largest block
+    private float[] samples = new float[0];
+
+    /**
+     * @throws IllegalArgumentException if the format is not linear PCM of a
+     * supported size
+     */
+    public LevelMeterDsp(AudioFormat format) {
+        AudioFormat.Encoding encoding = format.getEncoding();
+        int bits = format.getSampleSizeInBits();
+        if (AudioFormat.Encoding.PCM_SIGNED.equals(encoding) && bits == 8) {
+            kind = Kind.SIGNED_8;
+        } else if (AudioFormat.Encoding.PCM_UNSIGNED.equals(encoding) && bits == 8) {
+            kind = Kind.UNSIGNED_8;
+        } else if (AudioFormat.Encoding.PCM_SIGNED.equals(encoding) && bits == 16) {
+            kind = Kind.SIGNED_16;
+        } else if (AudioFormat.Encoding.PCM_SIGNED.equals(encoding) && bits == 24) {
+            kind = Kind.SIGNED_24;
+        } else if (AudioFormat.Encoding.PCM_SIGNED.equals(encoding) && bits == 32) {
+            kind = Kind.SIGNED_32;
+        } else if (AudioFormat.Encoding.PCM_FLOAT.equals(encoding) && bits == 32) {
+            kind = Kind.FLOAT_32;
+        } else if (AudioFormat.Encoding.PCM_FLOAT.equals(encoding) && bits == 64) {
+            kind = Kind.FLOAT_64;
+        } else {
+            throw new IllegalArgumentException("Formato no soportado: " + format);
+        }
+        this.bigEndian = format.isBigEndian();
+        ByteOrder order = bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        this.view = switch (kind) {
+            case SIGNED_16 ->
+                MethodHandles.byteArrayViewVarHandle(short[].class, order);
+            case SIGNED_32 ->
+                MethodHandles.byteArrayViewVarHandle(int[].class, order);
+            case FLOAT_32 ->
+                MethodHandles.byteArrayViewVarHandle(float[].class, order);
+            case FLOAT_64 ->
+                MethodHandles.byteArrayViewVarHandle(double[].class, order);
+            default ->
+                null;
+        };
+        this.channels = format.getChannels();
+        this.frameSize = format.getFrameSize();
+        this.sampleBytes = bits / 8;
+
+        float rate = format.getSampleRate();
+        // 99% in 300 ms: exp(-0.3 / tau) = 0.01
+        this.vuCoefficient = coefficient(rate, 0.3 / Math.log(100));
+        // A 10 ms burst reads 80% (-2 dB): exp(-0.010 / tau) = 0.2
+        this.ppmAttack = coefficient(rate, 0.010 / Math.log(5));
+        this.fallPerFrame = (float) Math.pow(10, -24.0 / 20 / (2.8 * rate));
+        this.holdFrames = (int) (HOLD_MILLIS / 1000.0 * rate);
+
+        this.rms = new float[channels];
+        this.samplePeak = new float[channels];
+        this.truePeak = new float[channels];
+        this.peakHold = new float[channels];
+        this.holdLeft = new int[channels];
+        this.vu = new float[channels];
+        this.ppm = new float[channels];
+        this.history = new float[channels][TAPS - 1];
+    }
+
+    // One-pole smoothing coefficient for a time constant of tau seconds
+    private static float coefficient(float rate, double tau) {
+        return (float) (1 - Math.exp(-1 / (tau * rate)));
+    }
+
+    /**
+     * Meters a block of whole frames.
+     *
+     * @param length bytes, a multiple of the frame size
+     */
+    public void process(byte[] data, int offset, int length) {
+        int frames = length / frameSize;
+        if (frames == 0) {
+            return;
+        }
+        if (samples.length < TAPS - 1 + frames) {
+            samples = new float[TAPS - 1 + frames];
+        }
+        for (int c = 0; c < channels; c++) {
+            processChannel(data, offset + c * sampleBytes, frames, c);
+        }
+    }
+
+    private void processChannel(byte[] data, int position, int frames, int c) {
+        float[] x = samples;
+        float vuLevel = vu[c];
+        float ppmLevel = ppm[c];
+        float vuK = vuCoefficient;
+        float attack = ppmAttack;
+        float fall = fallPerFrame;
+        double squares = 0;
+        float peak = 0;
+        System.arraycopy(history[c], 0, x, 0, TAPS - 1);
+        for (int i = 0; i < frames; i++, position += frameSize) {
+            float sample = sample(data, position);
+            float abs = Math.abs(sample);
+            x[TAPS - 1 + i] = sample;
+            float rectified = abs * SINE_FORM_FACTOR;
+            squares += sample * sample;
+            peak = Math.max(peak, abs);
+            vuLevel += (rectified - vuLevel) * vuK;
+            ppmLevel = abs > ppmLevel ? ppmLevel + (abs - ppmLevel) * attack : ppmLevel * fall;
+        }
+        System.arraycopy(x, frames, history[c], 0, TAPS - 1);
+        vu[c] = vuLevel < FLOOR ? 0 : vuLevel;
+        ppm[c] = ppmLevel < FLOOR ? 0 : ppmLevel;
+        rms[c] = (float) Math.sqrt(squares / frames);
+        samplePeak[c] = peak;
+        float blockTruePeak = Math.max(peak, truePeak(x, frames));
+        truePeak[c] = blockTruePeak;
+
+        if (blockTruePeak >= peakHold[c]) {
+            peakHold[c] = blockTruePeak;
+            holdLeft[c] = holdFrames;
+        } else if (holdLeft[c] > 0) {
+            holdLeft[c] -= frames;
+        } else {
+            float held = peakHold[c] * (float) Math.pow(fall, frames);
+            peakHold[c] = Math.max(blockTruePeak, held < FLOOR ? 0 : held);
+        }
+    }
+
+    /**
+     * Largest magnitude of the points between samples of a block. Output
+     * point {@code j} lies between samples {@code j + TAPS/2 - 1} and
+     * {@code j + TAPS/2} of {@code x}.
+     *
+     * @param x the last {@link #TRUE_PEAK_HISTORY} samples before the block,
+     * then its {@code frames} samples
+     */
+    static float truePeak(float[] x, int frames) {
+        if (VECTORIZED) {
+            return VectorTruePeak.max(x, frames, PHASES, TAPS);
+        }
+        float max = 0;
+        for (int j = 0; j < frames; j++) {
+            max = Math.max(max, interpolate(x, j, PHASES, TAPS));
+        }
+        return max;
+    }
+
+    // Largest magnitude of the interpolated points of window x[j .. j + taps)
+    static float interpolate(float[] x, int j, float[][] phases, int taps) {
+        float max = 0;
+        for (float[] phase : phases) {
+            float y = 0;
+            for (int w = 0; w < taps; w++) {
+                y += phase[taps - 1 - w] * x[j + w];
+            }
+            max = Math.max(max, Math.abs(y));
+        }
+        return max;
+    }
+
+    private float sample(byte[] data, int position) {
+        return switch (kind) {
+            case SIGNED_8 ->
+                data[position] / 128f;
+            case UNSIGNED_8 ->
+                ((data[position] & 0xFF) - 128) / 128f;
+            case SIGNED_16 ->
+                (short) view.get(data, position) / 32768f;
+            case SIGNED_24 ->
+                signed24(data, position) / 8388608f;
+            case SIGNED_32 ->
+                (int) view.get(data, position) / 2147483648f;
+            case FLOAT_32 ->
+                (float) view.get(data, position);
+            case FLOAT_64 ->
+                (float) (double) view.get(data, position);
+        };
+    }
+
+    private int signed24(byte[] data, int position) {
+        if (bigEndian) {
+            return data[position] << 16 | (data[position + 1] & 0xFF) << 8 | data[position + 2] & 0xFF;
+        }
+        return data[position + 2] << 16 | (data[position + 1] & 0xFF) << 8 | data[position] & 0xFF;
+    }
+
+    /**
+     * Decodes one channel of a block to floats in {@code [-1, 1)}, for
+     * consumers such as {@link SpectrumAnalyzer}. Does not meter.
+     *
+     * @return frames decoded
+     */
+    public int decode(byte[] data, int offset, int length, int channel, float[] out, int outOffset) {
+        int frames = length / frameSize;
+        int position = offset + channel * sampleBytes;
+        for (int i = 0; i < frames; i++, position += frameSize) {
+            out[outOffset + i] = sample(data, position);
+        }
+        return frames;
+    }
+
+    public int channels() {
+        return channels;
+    }
+
+    /**
+     * @return RMS of the last block, 1 being a full-scale square wave
+     */
+    public float rms(int channel) {
+        return rms[channel];
+    }
+
+    /**
+     * @return largest sample magnitude of the last block
+     */
+    public float samplePeak(int channel) {
+        return samplePeak[channel];
+    }
+
+    /**
+     * @return largest oversampled magnitude of the last block; can exceed 1
+     */
+    public float truePeak(int channel) {
+        return truePeak[channel];
+    }
+
+    public float peakHold(int channel) {
+        return peakHold[channel];
+    }
+
+    public float vu(int channel) {
+        return vu[channel];
+    }
+
+    public float ppm(int channel) {
+        return ppm[channel];
+    }
+
+    /**
+     * Forgets all levels and history, e.g. after the input changes.
+     */
+    public void reset() {
+        for (int c = 0; c < channels; c++) {
+            rms[c] = samplePeak[c] = truePeak[c] = peakHold[c] = vu[c] = ppm[c] = 0;
+            holdLeft[c] = 0;
+            Arrays.fill(history[c], 0);
+        }
+    }
+
+    /**
+     * @return {@code level} in dB relative to full scale, at least
+     * {@code -120}
+     */
+    public static double toDb(double level) {
+        return level > 1e-6 ? 20 * Math.log10(level) : -120;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.InterruptedIOException;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Sink that plays on a {@code SourceDataLine} of the default mixer, what the
+ * generators always did.
+ * <p>
+ * With {@link AudioMetrics}, every write first samples
+ * {@code line.available()} and the frame position, then times the write:
+ * a write that finds the buffer empty after the first one is an underrun,
+ * and frames written minus frames played minus frames queued is the drift
+ * of the line's clock against what it was given.
+ * <p>
+ * With a {@link LatencyTuner} the sink paces itself instead of filling the
+ * line buffer: writes are cut into the tuner's blocks and each one waits
+ * until it fits under the tuner's target fill.
+ *
+ * @author pc
+ */
+public class LineSink implements PcmSink {
+
+    private final SourceDataLine line;
+    private final AudioMetrics metrics;
+    private final LatencyTuner tuner;
+    private final int frameSize;
+    private byte[] scratch = new byte[0];
+    private long framesWritten;
+
+    public LineSink(SourceDataLine line) {
+        this(line, null);
+    }
+
+    /**
+     * @param metrics where to record every write, or {@code null}
+     */
+    public LineSink(SourceDataLine line, AudioMetrics metrics) {
+        this(line, metrics, null);
+    }
+
+    /**
+     * @param metrics where to record every write, or {@code null}
+     * @param tuner pacing for low latency, or {@code null} to fill the line
+     * buffer
+     */
+    public LineSink(SourceDataLine line, AudioMetrics metrics, LatencyTuner tuner) {
+        this.line = line;
+        this.metrics = metrics;
+        this.tuner = tuner;
+        this.frameSize = line.getFormat().getFrameSize();
+        // Count what is already queued or played, such as probe silence
+        this.framesWritten = line.getLongFramePosition() + (line.getBufferSize() - line.available()) / frameSize;
+    }
+
+    /**
+     * Opens and starts a line for {@code format}.
+     *
+     * @param bufferBytes line buffer size, or 0 for the mixer default
+     */
+    public static LineSink open(AudioFormat format, int bufferBytes) throws LineUnavailableException {
+        return open(format, bufferBytes, null);
+    }
+
+    /**
+     * Same as {@link #open(AudioFormat, int)}, recording every write in
+     * {@code metrics} unless it is {@code null}.
+     */
+    public static LineSink open(AudioFormat format, int bufferBytes, AudioMetrics metrics) throws LineUnavailableException {
+        return new LineSink(openLine(format, bufferBytes), metrics);
+    }
+
+    /**
+     * Opens a line in low-latency mode: {@link LatencyTuner#probe} picks the
+     * block and the target fill, playing a moment of silence. A line whose
+     * buffer is too small to pace is written as a plain line sink.
+     *
+     * @throws InterruptedIOException if interrupted while probing
+     */
+    public static LineSink openLowLatency(AudioFormat format, AudioMetrics metrics)
+            throws LineUnavailableException, InterruptedIOException {
+        SourceDataLine line = openLine(format, LatencyTuner.MAX_TARGET_FRAMES * format.getFrameSize());
+        LatencyTuner tuner;
+        try {
+            tuner = LatencyTuner.probe(line);
+        } catch (InterruptedIOException e) {
+            line.close();
+            throw e;
+        }
+        // A null tuner writes straight to the line
+        return new LineSink(line, metrics, tuner);
+    }
+
+    private static SourceDataLine openLine(AudioFormat format, int bufferBytes) throws LineUnavailableException {
+        DataLine.Info info = new DataLine.Info(SourceDataLine.class, format, bufferBytes > 0 ? bufferBytes : AudioSystem.NOT_SPECIFIED);
+        if (!AudioSystem.isLineSupported(info)) {
+            throw new LineUnavailableException("Formato no soportado: " + format);
+        }
+        SourceDataLine line = (SourceDataLine) AudioSystem.getLine(info);
+        if (bufferBytes > 0) {
+            line.open(format, bufferBytes);
+        } else {
+            line.open(format);
+        }
+        line.start();
+        return line;
+    }
+
+    public SourceDataLine line() {
+        return line;
+    }
+
+    /**
+     * @return the tuner of a low-latency sink, or {@code null}
+     */
+    public LatencyTuner tuner() {
+        return tuner;
+    }
+
+    @Override
+    public AudioFormat format() {
+        return line.getFormat();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws InterruptedIOException {
+        if (tuner != null) {
+            int block = tuner.blockFrames() * frameSize;
+            for (int end = offset + length; offset < end; offset += block) {
+                writeBlock(data, offset, Math.min(block, end - offset));
+            }
+        } else if (metrics != null) {
+            writeBlock(data, offset, length);
+        } else {
+            line.write(data, offset, length);
+        }
+    }
+
+    private void writeBlock(byte[] data, int offset, int length) throws InterruptedIOException {
+        int bufferFrames = line.getBufferSize() / frameSize;
+        int frames = length / frameSize;
+        long start = System.nanoTime();
+        // A paced write looks at the fill after waiting, when it is lowest
+        int fill = tuner != null
+                ? tuner.awaitRoom(line, frames)
+                : bufferFrames - line.available() / frameSize;
+        boolean underrun = framesWritten > 0 && fill == 0;
+        long drift = framesWritten - line.getLongFramePosition() - fill;
+        if (tuner != null) {
+            tuner.update(underrun, System.nanoTime());
+        }
+        line.write(data, offset, length);
+        if (metrics != null) {
+            metrics.recordLineWrite(frames, System.nanoTime() - start, fill, bufferFrames, underrun, drift);
+        }
+        framesWritten += frames;
+    }
+
+    /**
+     * @return the preferred size in low-latency mode, otherwise
+     * {@code preferred}
+     */
+    @Override
+    public int blockFrames(int preferred) {
+        return tuner != null ? tuner.blockFrames() : preferred;
+    }
+
+    /**
+     * Java Sound lines only accept heap arrays, so the buffer is copied once
+     * into a reused one.
+     */
+    @Override
+    public void write(PcmBuffer buffer) throws InterruptedIOException {
+        int length = buffer.byteLength();
+        if (scratch.length < length) {
+            scratch = new byte[length];
+        }
+        buffer.copyTo(scratch, 0);
+        write(scratch, 0, length);
+    }
+
+    @Override
+    public void drain() {
+        line.drain();
+    }
+
+    @Override
+    public void close() {
+        line.drain();
+        line.close();
+    }
+
+    @Override
+    public String report() {
+        return tuner != null ? tuner.report() : null;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Histogram of non-negative values in power-of-two buckets: bucket 0 counts
+ * zeros and bucket {@code i} counts values in {@code [2^(i-1), 2^i)}.
+ * Recording is a leading-zero count and three stores, with no allocation and
+ * no locks, so it can run once per audio block on the hot path.
+ * <p>
+ * Like the counters of {@link PcmRingBuffer}, there is one writing thread;
+ * the others read with opaque loads and may see a recording half done,
+ * which is fine for monitoring.
+ *
+ * @author pc
+ */
+public class LogHistogram {
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    static final int BUCKETS = 65;
+    private static final int COUNT = BUCKETS;
+    private static final int SUM = BUCKETS + 1;
+    private static final int MAX = BUCKETS + 2;
+    private static final int MIN = BUCKETS + 3;
+
+    private final long[] slots = new long[BUCKETS + 4];
+
+    public LogHistogram() {
+        slots[MIN] = Long.MAX_VALUE;
+    }
+
+    /**
+     * Records one value; negative values count as zero. Writer thread only.
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        int bucket = 64 - Long.numberOfLeadingZeros(value);
+        SLOTS.setOpaque(slots, bucket, slots[bucket] + 1);
+        SLOTS.setOpaque(slots, SUM, slots[SUM] + value);
+        if (value > slots[MAX]) {
+            SLOTS.setOpaque(slots, MAX, value);
+        }
+        if (value < slots[MIN]) {
+            SLOTS.setOpaque(slots, MIN, value);
+        }
+        SLOTS.setOpaque(slots, COUNT, slots[COUNT] + 1);
+    }
+
+    public long count() {
+        return (long) SLOTS.getOpaque(slots, COUNT);
+    }
+
+    public long sum() {
+        return (long) SLOTS.getOpaque(slots, SUM);
+    }
+
+    public long max() {
+        return (long) SLOTS.getOpaque(slots, MAX);
+    }
+
+    /**
+     * @return the smallest value, or 0 if nothing was recorded
+     */
+    public long min() {
+        return count() == 0 ? 0 : (long) SLOTS.getOpaque(slots, MIN);
+    }
+
+    public double mean() {
+        long count = count();
+        return count == 0 ? 0 : sum() / (double) count;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return an upper bound for that quantile: the top of the bucket it
+     * falls in, capped to the largest value seen
+     */
+    public long percentile(double quantile) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += (long) SLOTS.getOpaque(slots, bucket);
+            if (seen >= rank) {
+                long top = bucket == 0 ? 0 : bucket == 64 ? Long.MAX_VALUE : (1L << bucket) - 1;
+                return Math.min(top, max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * @return a copy of the bucket counts, index {@code i} being values
+     * below {@code 2^i}
+     */
+    public long[] buckets() {
+        long[] copy = new long[BUCKETS];
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            copy[bucket] = (long) SLOTS.getOpaque(slots, bucket);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Offline loudness of WAV files after ITU-R BS.1770-4 and EBU R128:
+ * integrated loudness, loudness range (EBU Tech 3342), true peak, sample
+ * peak and RMS.
+ * <p>
+ * Every channel goes through the K-weighting filter, a high shelf and a
+ * high pass as two biquads designed for the file's rate, and its energy is
+ * summed per 100 ms sub-block with the channel's weight. Gating blocks
+ * (400 ms, 75% overlap) and the 3 s short-term windows of the loudness
+ * range are sums of consecutive sub-blocks, so a file is cut into chunks of
+ * {@value #CHUNK_SECONDS} s that are measured on different threads and
+ * merged by laying their sub-blocks end to end. Each chunk first runs its
+ * filters and the true-peak history over the {@value #PRE_ROLL_MILLIS} ms
+ * before it, by which time the filter state matches a single pass to
+ * double precision. Chunks depend only on the file, so the result is the
+ * same whatever the parallelism.
+ * <p>
+ * Chunks stream their part of the file through a 1 MB read buffer with
+ * positional reads; {@link LevelMeterDsp} decodes the samples and supplies
+ * the true-peak interpolator.
+ *
+ * @author pc
+ */
+public class LoudnessAnalyzer {
+
+    static final int CHUNK_SECONDS = 60;
+    static final int PRE_ROLL_MILLIS = 500;
+    static final double ABSOLUTE_GATE_LUFS = -70;
+    static final double RELATIVE_GATE_LU = -10;
+    static final double RANGE_RELATIVE_GATE_LU = -20;
+
+    // Sub-blocks per gating block and per short-term window
+    private static final int BLOCK_SUBS = 4;
+    private static final int SHORT_TERM_SUBS = 30;
+    // Weight of the surround channels in BS.1770
+    private static final double SURROUND_WEIGHT = 1.41;
+    private static final int HISTORY = LevelMeterDsp.TRUE_PEAK_HISTORY;
+
+    /**
+     * Loudness of one file. Levels of silence are {@code -Infinity}.
+     *
+     * @param integratedLufs gated loudness of the whole file
+     * @param rangeLu loudness range
+     * @param truePeakDbtp largest true peak of any channel
+     * @param samplePeakDbfs largest sample of any channel
+     * @param rmsDbfs RMS of all samples, unweighted
+     */
+    public record Result(Path file, AudioFormat format, long frames, double integratedLufs, double rangeLu,
+            double truePeakDbtp, double samplePeakDbfs, double rmsDbfs) {
+
+        public double seconds() {
+            return frames / format.getFrameRate();
+        }
+
+        /**
+         * @return a one line summary
+         */
+        public String report() {
+            return String.format("%s: %.1f LUFS, LRA %.1f LU, pico real %.1f dBTP, pico %.1f dBFS, RMS %.1f dBFS, %.1f s",
+                    file, integratedLufs, rangeLu, truePeakDbtp, samplePeakDbfs, rmsDbfs, seconds());
+        }
+    }
+
+    private final int parallelism;
+
+    /**
+     * @param parallelism threads measuring the chunks of a file
+     */
+    public LoudnessAnalyzer(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Paralelismo inválido: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Measures a WAV file of integer or float PCM.
+     *
+     * @throws IOException if the file cannot be read or is not such a file
+     * @throws InterruptedException if interrupted while waiting for the
+     * workers
+     */
+    public Result analyze(Path file) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WavHeader.Data data = WavHeader.read(channel);
+            AudioFormat format = data.format();
+            long totalFrames = data.frames();
+            int subFrames = Math.max(1, Math.round(format.getFrameRate() / 10));
+            long chunkFrames = (long) CHUNK_SECONDS * 10 * subFrames;
+            double[] kWeighting = kWeighting(format.getFrameRate());
+
+            ThreadLocal<Worker> workers = ThreadLocal.withInitial(() -> new Worker(format, kWeighting));
+            List<Future<Chunk>> pending = new ArrayList<>();
+            List<Chunk> chunks = new ArrayList<>();
+            ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+            try {
+                for (long first = 0; first < totalFrames; first += chunkFrames) {
+                    long from = first;
+                    long to = Math.min(totalFrames, first + chunkFrames);
+                    pending.add(executor.submit(() -> workers.get().measure(channel, data, from, to, subFrames)));
+                }
+                for (Future<Chunk> chunk : pending) {
+                    chunks.add(chunk.get());
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                OfflineRenderer.stop(executor, pending);
+            }
+            return merge(file, format, totalFrames, subFrames, chunks);
+        }
+    }
+
+    private static Result merge(Path file, AudioFormat format, long totalFrames, int subFrames, List<Chunk> chunks) {
+        // Running sum of the sub-block energies; a last partial sub-block is left out
+        int subs = (int) (totalFrames / subFrames);
+        double[] cumulative = new double[subs + 1];
+        int s = 0;
+        float truePeak = 0;
+        float samplePeak = 0;
+        double squares = 0;
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.energy.length && s < subs; i++, s++) {
+                cumulative[s + 1] = cumulative[s] + chunk.energy[i];
+            }
+            truePeak = Math.max(truePeak, chunk.truePeak);
+            samplePeak = Math.max(samplePeak, chunk.samplePeak);
+            squares += chunk.squares;
+        }
+        double integrated = integrated(meanSquares(cumulative, BLOCK_SUBS, subFrames));
+        double range = range(meanSquares(cumulative, SHORT_TERM_SUBS, subFrames));
+        double rms = totalFrames == 0 ? Double.NEGATIVE_INFINITY
+                : 10 * Math.log10(squares / ((double) totalFrames * format.getChannels()));
+        return new Result(file, format, totalFrames, integrated, range,
+                20 * Math.log10(Math.max(truePeak, samplePeak)), 20 * Math.log10(samplePeak), rms);
+    }
+
+    // Weighted mean square of every window of 'width' sub-blocks, one sub-block apart
+    private static double[] meanSquares(double[] cumulative, int width, int subFrames) {
+        int windows = Math.max(0, cumulative.length - width);
+        double[] z = new double[windows];
+        for (int j = 0; j < windows; j++) {
+            z[j] = (cumulative[j + width] - cumulative[j]) / ((double) width * subFrames);
+        }
+        return z;
+    }
+
+    static double loudness(double meanSquare) {
+        return -0.691 + 10 * Math.log10(meanSquare);
+    }
+
+    // Mean of the blocks above the absolute gate, then of those also above the relative one
+    static double integrated(double[] blocks) {
+        double relativeGate = gatedLoudness(blocks, Double.NEGATIVE_INFINITY) + RELATIVE_GATE_LU;
+        return gatedLoudness(blocks, relativeGate);
+    }
+
+    private static double gatedLoudness(double[] blocks, double relativeGate) {
+        double sum = 0;
+        int count = 0;
+        for (double z : blocks) {
+            double l = loudness(z);
+            if (l > ABSOLUTE_GATE_LUFS && l > relativeGate) {
+                sum += z;
+                count++;
+            }
+        }
+        return count == 0 ? Double.NEGATIVE_INFINITY : loudness(sum / count);
+    }
+
+    // Spread between the 10th and 95th percentiles of the gated short-term loudness
+    static double range(double[] shortTerm) {
+        double relativeGate = gatedLoudness(shortTerm, Double.NEGATIVE_INFINITY) + RANGE_RELATIVE_GATE_LU;
+        double[] kept = new double[shortTerm.length];
+        int n = 0;
+        for (double z : shortTerm) {
+            double l = loudness(z);
+            if (l > ABSOLUTE_GATE_LUFS && l > relativeGate) {
+                kept[n++] = l;
+            }
+        }
+        if (n == 0) {
+            return 0;
+        }
+        Arrays.sort(kept, 0, n);
+        return kept[(int) Math.round((n - 1) * 0.95)] - kept[(int) Math.round((n - 1) * 0.10)];
+    }
+
+    /**
+     * K-weighting for {@code rate} from the analog prototype of BS.1770,
+     * which gives its published coefficients at 48 kHz.
+     *
+     * @return {@code b0 b1 b2 a1 a2} of the shelf, then {@code a1 a2} of
+     * the high pass, whose numerator is {@code 1 -2 1}
+     */
+    static double[] kWeighting(float rate) {
+        double k = Math.tan(Math.PI * 1681.974450955533 / rate);
+        double q = 0.7071752369554196;
+        double vh = Math.pow(10, 3.999843853973347 / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        double[] c = new double[7];
+        c[0] = (vh + vb * k / q + k * k) / a0;
+        c[1] = 2 * (k * k - vh) / a0;
+        c[2] = (vh - vb * k / q + k * k) / a0;
+        c[3] = 2 * (k * k - 1) / a0;
+        c[4] = (1 - k / q + k * k) / a0;
+
+        k = Math.tan(Math.PI * 38.13547087602444 / rate);
+        q = 0.5003270373238773;
+        a0 = 1 + k / q + k * k;
+        c[5] = 2 * (k * k - 1) / a0;
+        c[6] = (1 - k / q + k * k) / a0;
+        return c;
+    }
+
+    /**
+     * BS.1770 weights for the usual WAV channel orders: L R C Ls Rs, or
+     * L R C LFE Ls Rs with the LFE left out. Other layouts weigh every
+     * channel 1.
+     */
+    static double[] channelWeights(int channels) {
+        double[] weights = new double[channels];
+        Arrays.fill(weights, 1);
+        if (channels == 5) {
+            weights[3] = weights[4] = SURROUND_WEIGHT;
+        } else if (channels == 6) {
+            weights[3] = 0;
+            weights[4] = weights[5] = SURROUND_WEIGHT;
+        }
+        return weights;
+    }
+
+    /**
+     * What one chunk contributes to the result.
+     */
+    private static final class Chunk {
+
+        // Weighted K-filtered energy of each sub-block, the last maybe partial
+        final double[] energy;
+        float truePeak;
+        float samplePeak;
+        double squares;
+
+        Chunk(int subs) {
+            this.energy = new double[subs];
+        }
+    }
+
+    /**
+     * Read buffer, filter state and scratch of one measuring thread.
+     */
+    private static final class Worker {
+
+        private final LevelMeterDsp decoder;
+        private final int channels;
+        private final int frameSize;
+        private final int preRollFrames;
+        private final double[] k;
+        private final double[] weights;
+        private final byte[] buffer;
+        private final ByteBuffer wrapped;
+        // History for the true-peak interpolator, then one channel of a block
+        private final float[] x;
+        private final float[][] history;
+        // Two state variables per biquad per channel
+        private final double[][] state;
+
+        Worker(AudioFormat format, double[] kWeighting) {
+            this.decoder = new LevelMeterDsp(format);
+            this.channels = format.getChannels();
+            this.frameSize = format.getFrameSize();
+            this.preRollFrames = (int) (format.getFrameRate() * PRE_ROLL_MILLIS / 1000);
+            this.k = kWeighting;
+            this.weights = channelWeights(channels);
+            int bufferFrames = DecodeWriter.DEFAULT_BUFFER_SIZE / frameSize;
+            this.buffer = new byte[bufferFrames * frameSize];
+            this.wrapped = ByteBuffer.wrap(buffer);
+            this.x = new float[HISTORY + bufferFrames];
+            this.history = new float[channels][HISTORY];
+            this.state = new double[channels][4];
+        }
+
+        Chunk measure(FileChannel channel, WavHeader.Data data, long from, long to, int subFrames) throws IOException {
+            for (int c = 0; c < channels; c++) {
+                Arrays.fill(history[c], 0);
+                Arrays.fill(state[c], 0);
+            }
+            Chunk chunk = new Chunk((int) ((to - from + subFrames - 1) / subFrames));
+            // Settles the filters; nothing before 'from' is measured
+            run(channel, data, Math.max(0, from - preRollFrames), from, from, subFrames, null);
+            run(channel, data, from, to, from, subFrames, chunk);
+            return chunk;
+        }
+
+        private void run(FileChannel channel, WavHeader.Data data, long from, long to, long chunkStart,
+                int subFrames, Chunk chunk) throws IOException {
+            int bufferFrames = buffer.length / frameSize;
+            for (long position = from; position < to;) {
+                int frames = (int) Math.min(bufferFrames, to - position);
+                int bytes = frames * frameSize;
+                long offset = data.dataOffset() + position * frameSize;
+                wrapped.clear().limit(bytes);
+                while (wrapped.hasRemaining()) {
+                    if (channel.read(wrapped, offset + wrapped.position()) < 0) {
+                        throw new IOException("Archivo WAV truncado");
+                    }
+                }
+                for (int c = 0; c < channels; c++) {
+                    decoder.decode(buffer, 0, bytes, c, x, HISTORY);
+                    System.arraycopy(history[c], 0, x, 0, HISTORY);
+                    if (chunk == null) {
+                        filter(c, 0, frames);
+                    } else {
+                        measure(c, frames, position - chunkStart, subFrames, chunk);
+                    }
+                    System.arraycopy(x, frames, history[c], 0, HISTORY);
+                }
+                position += frames;
+            }
+        }
+
+        private void measure(int c, int frames, long first, int subFrames, Chunk chunk) {
+            double squares = 0;
+            float peak = 0;
+            for (int i = HISTORY; i < HISTORY + frames; i++) {
+                float sample = x[i];
+                squares += sample * sample;
+                peak = Math.max(peak, Math.abs(sample));
+            }
+            chunk.squares += squares;
+            chunk.samplePeak = Math.max(chunk.samplePeak, peak);
+            chunk.truePeak = Math.max(chunk.truePeak, LevelMeterDsp.truePeak(x, frames));
+            // Split the block where sub-blocks end
+            for (int i = 0; i < frames;) {
+                int sub = (int) ((first + i) / subFrames);
+                int end = (int) Math.min(frames, (long) (sub + 1) * subFrames - first);
+                chunk.energy[sub] += weights[c] * filter(c, i, end);
+                i = end;
+            }
+        }
+
+        // K-weights x[HISTORY + from .. HISTORY + to) of channel c; returns the sum of squares
+        private double filter(int c, int from, int to) {
+            double b0 = k[0], b1 = k[1], b2 = k[2], a1 = k[3], a2 = k[4], h1 = k[5], h2 = k[6];
+            double[] s = state[c];
+            double s1 = s[0], s2 = s[1], s3 = s[2], s4 = s[3];
+            double sum = 0;
+            for (int i = HISTORY + from; i < HISTORY + to; i++) {
+                double in = x[i];
+                // Transposed direct form II, shelf then high pass
+                double shelf = b0 * in + s1;
+                s1 = b1 * in - a1 * shelf + s2;
+                s2 = b2 * in - a2 * shelf;
+                double out = shelf + s3;
+                s3 = -2 * shelf - h1 * out + s4;
+                s4 = shelf - h2 * out;
+                sum += out * out;
+            }
+            s[0] = s1;
+            s[1] = s2;
+            s[2] = s3;
+            s[3] = s4;
+            return sum;
+        }
+    }
+
+    /**
+     * Measures WAV files or every file in the given directories.
+     * {@code -Dsimplecodigo.parallelism} sets the threads per file.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Uso: LoudnessAnalyzer archivo.wav|directorio...");
+            return;
+        }
+        int parallelism = Integer.getInteger("simplecodigo.parallelism", Runtime.getRuntime().availableProcessors());
+        LoudnessAnalyzer analyzer = new LoudnessAnalyzer(parallelism);
+        List<Path> files;
+        try {
+            files = BatchDecoder.inputs(Arrays.stream(args).map(Path::of).toList());
+        } catch (IOException e) {
+            System.err.println("Error leyendo archivo: " + e.getMessage());
+            return;
+        }
+        for (Path file : files) {
+            long start = System.nanoTime();
+            try {
+                Result result = analyzer.analyze(file);
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%s (%.0fx tiempo real)%n", result.report(), result.seconds() / elapsed);
+            } catch (IOException e) {
+                System.err.println("Error leyendo " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
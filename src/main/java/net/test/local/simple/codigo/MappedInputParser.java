@@ -0,0 +1,377 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parser for {@code number word} input that works straight on the bytes of a
+ * memory-mapped file. Each line is scanned once: the key digits are
+ * accumulated into an {@code int} and only the offset and length of the value
+ * are recorded, so no {@code String}, boxed key or map entry is created per
+ * line. Duplicate keys keep the last value, like {@code HashMap.put}.
+ * <p>
+ * With a parallelism above one, large inputs are split at line boundaries
+ * and the pieces are scanned on a {@link ForkJoinPool}; the pieces are then
+ * joined in input order, so duplicate keys resolve exactly as they do when
+ * parsing on one thread.
+ *
+ * @author pc
+ */
+public class MappedInputParser {
+
+    // Below this size splitting costs more than it saves
+    static final long PARALLEL_THRESHOLD = 4 << 20;
+    static final long MIN_CHUNK = 1 << 20;
+
+    private final int parallelism;
+
+    /**
+     * Single-threaded parser.
+     */
+    public MappedInputParser() {
+        this(1);
+    }
+
+    /**
+     * @param parallelism number of worker threads used to scan large inputs
+     */
+    public MappedInputParser(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Paralelismo inválido: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Maps a file and parses it. The mapping stays alive as long as the
+     * returned index is reachable.
+     *
+     * @param file input in {@code number word} format
+     * @return the sorted index
+     * @throws IOException if the file cannot be mapped
+     */
+    public KeyValueIndex parse(Path file) throws IOException {
+        return parse(map(file));
+    }
+
+    /**
+     * Maps a file in the given arena and parses it. The returned index is
+     * only usable until the arena is closed.
+     *
+     * @param file input in {@code number word} format
+     * @param arena owner of the mapping
+     * @return the sorted index
+     * @throws IOException if the file cannot be mapped
+     */
+    public KeyValueIndex parse(Path file, Arena arena) throws IOException {
+        return parse(map(file, arena));
+    }
+
+    /**
+     * Parses a classpath resource. Resources that live in a directory are
+     * mapped; resources inside a jar are read into a heap segment.
+     *
+     * @param name absolute resource name, e.g. {@code /coding_qual_input.txt}
+     * @return the sorted index
+     * @throws IOException if the resource is missing or unreadable
+     */
+    public KeyValueIndex parseResource(String name) throws IOException {
+        URL url = MappedInputParser.class.getResource(name);
+        if (url == null) {
+            throw new IOException("Recurso no encontrado: " + name);
+        }
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return parse(Path.of(url.toURI()));
+            } catch (URISyntaxException e) {
+                // Fall back to the stream below
+            }
+        }
+        try (InputStream in = url.openStream()) {
+            return parse(MemorySegment.ofArray(in.readAllBytes()));
+        }
+    }
+
+    /**
+     * Parses input already available as a segment.
+     *
+     * @param data UTF-8 bytes in {@code number word} format
+     * @return the sorted index, whose values point into {@code data}
+     */
+    public KeyValueIndex parse(MemorySegment data) {
+        if (parallelism > 1 && data.byteSize() >= PARALLEL_THRESHOLD) {
+            return parseParallel(data);
+        }
+        ParseBuffer buffer = new ParseBuffer(estimateLines(data.byteSize()));
+        scan(data, 0, data.byteSize(), buffer);
+        return buffer.toIndex(data);
+    }
+
+    private KeyValueIndex parseParallel(MemorySegment data) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // Sorting from inside the pool keeps parallelSort on our workers
+            return pool.submit(() -> {
+                long chunk = Math.max(MIN_CHUNK, data.byteSize() / (parallelism * 4L));
+                List<ParseBuffer> parts = new ChunkTask(data, 0, data.byteSize(), chunk).invoke();
+                return ParseBuffer.concat(parts).toIndexParallel(data);
+            }).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static MemorySegment map(Path file) throws IOException {
+        return map(file, Arena.ofAuto());
+    }
+
+    static MemorySegment map(Path file, Arena arena) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+        }
+    }
+
+    // Short words plus a few digits: about 10 bytes per line
+    static int estimateLines(long bytes) {
+        return (int) Math.min(Math.max(bytes / 10, 16), Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Scans the lines that start in {@code [from, to)}. {@code from} must be
+     * the first byte of a line. Accepts the same keys as
+     * {@code Integer.parseInt} and the same terminators as
+     * {@code readLine()} for {@code \n} and {@code \r\n} files.
+     */
+    static void scan(MemorySegment data, long from, long to, ParseBuffer out) {
+        long pos = from;
+        while (pos < to) {
+            long lineStart = pos;
+            long separator = -1;
+            long magnitude = 0;
+            int digits = 0;
+            boolean negative = false;
+            boolean number = true;
+
+            long p = pos;
+            for (; p < to; p++) {
+                byte b = data.get(ValueLayout.JAVA_BYTE, p);
+                if (b == '\n') {
+                    break;
+                }
+                if (separator < 0) {
+                    if (b == ' ') {
+                        separator = p;
+                    } else if (b >= '0' && b <= '9') {
+                        // Saturate once past the int range, overflow is checked below
+                        magnitude = magnitude <= Integer.MAX_VALUE
+                                ? magnitude * 10 + (b - '0')
+                                : Long.MAX_VALUE;
+                        digits++;
+                    } else if (p == lineStart && (b == '-' || b == '+')) {
+                        negative = b == '-';
+                    } else {
+                        number = false;
+                    }
+                }
+            }
+            long lineEnd = p;
+            if (lineEnd > lineStart && data.get(ValueLayout.JAVA_BYTE, lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            pos = p + 1;
+
+            if (separator < 0 || separator >= lineEnd) {
+                out.reportError("Formato de línea inválido: ", data, lineStart, lineEnd);
+            } else if (!number || digits == 0
+                    || magnitude > (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+                out.reportError("Formato de número en línea: ", data, lineStart, lineEnd);
+            } else {
+                int key = (int) (negative ? -magnitude : magnitude);
+                out.add(key, separator + 1, (int) (lineEnd - separator - 1));
+            }
+        }
+    }
+
+    /**
+     * @return the first byte after the {@code '\n'} found at or after
+     * {@code from}, or {@code to} when the range holds no more line breaks
+     */
+    static long nextLineStart(MemorySegment data, long from, long to) {
+        for (long p = from; p < to; p++) {
+            if (data.get(ValueLayout.JAVA_BYTE, p) == '\n') {
+                return p + 1;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Halves a byte range at a line boundary until it is small enough, then
+     * scans it into its own buffer. The result lists the buffers in input
+     * order.
+     */
+    static class ChunkTask extends RecursiveTask<List<ParseBuffer>> {
+
+        private final MemorySegment data;
+        private final long from;
+        private final long to;
+        private final long chunk;
+
+        ChunkTask(MemorySegment data, long from, long to, long chunk) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected List<ParseBuffer> compute() {
+            long mid = to - from > chunk ? nextLineStart(data, from + (to - from) / 2, to) : to;
+            if (mid >= to) {
+                ParseBuffer buffer = new ParseBuffer(estimateLines(to - from));
+                scan(data, from, to, buffer);
+                List<ParseBuffer> result = new ArrayList<>();
+                result.add(buffer);
+                return result;
+            }
+            ChunkTask left = new ChunkTask(data, from, mid, chunk);
+            left.fork();
+            List<ParseBuffer> right = new ChunkTask(data, mid, to, chunk).compute();
+            List<ParseBuffer> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+    }
+
+    /**
+     * Growable primitive columns filled in input order, later sorted into an
+     * {@link ArrayKeyValueIndex}. Growth is geometric, so the allocation cost
+     * per line is constant.
+     */
+    static class ParseBuffer {
+
+        int[] keys;
+        long[] offsets;
+        int[] lengths;
+        int size;
+        int errors;
+
+        ParseBuffer(int capacity) {
+            keys = new int[capacity];
+            offsets = new long[capacity];
+            lengths = new int[capacity];
+        }
+
+        void add(int key, long offset, int length) {
+            if (size == keys.length) {
+                int capacity = (int) Math.min(keys.length * 2L, Integer.MAX_VALUE - 8);
+                if (capacity == size) {
+                    throw new IllegalStateException("Demasiadas líneas: " + size);
+                }
+                keys = Arrays.copyOf(keys, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            keys[size] = key;
+            offsets[size] = offset;
+            lengths[size] = length;
+            size++;
+        }
+
+        void reportError(String message, MemorySegment data, long start, long end) {
+            errors++;
+            byte[] line = new byte[(int) Math.min(end - start, 1024)];
+            MemorySegment.copy(data, ValueLayout.JAVA_BYTE, start, line, 0, line.length);
+            System.err.println(message + new String(line, StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Sorts by key and keeps, for every key, the entry that came last in
+         * the input. Key and input position are packed into one {@code long}
+         * so a single primitive sort gives both orders at once.
+         */
+        ArrayKeyValueIndex toIndex(MemorySegment data) {
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) keys[i] << 32) | i;
+            }
+            Arrays.sort(order);
+            return collect(data, order);
+        }
+
+        /**
+         * Same as {@link #toIndex(MemorySegment)} with a parallel sort. Must
+         * run inside the pool that should do the sorting.
+         */
+        ArrayKeyValueIndex toIndexParallel(MemorySegment data) {
+            long[] order = new long[size];
+            Arrays.parallelSetAll(order, i -> ((long) keys[i] << 32) | i);
+            Arrays.parallelSort(order);
+            return collect(data, order);
+        }
+
+        /**
+         * Joins chunk buffers in the given order, which must be input order
+         * for last-wins to hold.
+         */
+        static ParseBuffer concat(List<ParseBuffer> parts) {
+            long total = 0;
+            for (ParseBuffer part : parts) {
+                total += part.size;
+            }
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Demasiadas líneas: " + total);
+            }
+            ParseBuffer merged = new ParseBuffer((int) Math.max(total, 1));
+            for (ParseBuffer part : parts) {
+                System.arraycopy(part.keys, 0, merged.keys, merged.size, part.size);
+                System.arraycopy(part.offsets, 0, merged.offsets, merged.size, part.size);
+                System.arraycopy(part.lengths, 0, merged.lengths, merged.size, part.size);
+                merged.size += part.size;
+                merged.errors += part.errors;
+            }
+            return merged;
+        }
+
+        ArrayKeyValueIndex collect(MemorySegment data, long[] order) {
+            int[] sortedKeys = new int[order.length];
+            long[] sortedOffsets = new long[order.length];
+            int[] sortedLengths = new int[order.length];
+            int n = 0;
+            for (int j = 0; j < order.length; j++) {
+                int key = (int) (order[j] >> 32);
+                if (j + 1 < order.length && (int) (order[j + 1] >> 32) == key) {
+                    continue; // a later line overrides this one
+                }
+                int line = (int) order[j];
+                sortedKeys[n] = key;
+                sortedOffsets[n] = offsets[line];
+                sortedLengths[n] = lengths[line];
+                n++;
+            }
+            return new ArrayKeyValueIndex(data, sortedKeys, sortedOffsets, sortedLengths, n);
+        }
+    }
+}
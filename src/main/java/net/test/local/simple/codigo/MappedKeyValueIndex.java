@@ -0,0 +1,62 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link KeyValueIndex} read in place from a mapped {@link BinaryIndexFile}.
+ * Nothing is copied to the heap when the file is opened; keys, offsets and
+ * values are read from the mapping on demand.
+ *
+ * @author pc
+ */
+public class MappedKeyValueIndex implements KeyValueIndex {
+
+    private final MemorySegment keys;
+    private final MemorySegment offsets;
+    private final MemorySegment heap;
+    private final int size;
+
+    MappedKeyValueIndex(MemorySegment keys, MemorySegment offsets, MemorySegment heap, int size) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.heap = heap;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int keyAt(int position) {
+        return keys.getAtIndex(BinaryIndexFile.INT, position);
+    }
+
+    @Override
+    public String valueAt(int position) {
+        long start = offsets.getAtIndex(BinaryIndexFile.LONG, position);
+        long end = offsets.getAtIndex(BinaryIndexFile.LONG, position + 1);
+        byte[] bytes = new byte[(int) (end - start)];
+        MemorySegment.copy(heap, ValueLayout.JAVA_BYTE, start, bytes, 0, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public MemorySegment valueBytes(int position) {
+        long start = offsets.getAtIndex(BinaryIndexFile.LONG, position);
+        long end = offsets.getAtIndex(BinaryIndexFile.LONG, position + 1);
+        return heap.asSlice(start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return KeyValueIndex.format(this);
+    }
+}
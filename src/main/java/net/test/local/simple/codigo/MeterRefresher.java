@@ -0,0 +1,121 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.swing.Timer;
+
+/**
+ * Moves meter readings from {@link MeterSlot}s to the screen with one Swing
+ * {@code Timer} for any number of meters. Capture threads only publish into
+ * their slot; on each tick the EDT reads every slot once and updates only
+ * the views whose reading changed. EDT work depends on the display rate and
+ * the number of meters, never on how often the capture loops read.
+ * <p>
+ * The rate is {@code -Dsimplecodigo.meter.fps} frames per second, 30 by
+ * default.
+ *
+ * @author pc
+ */
+public class MeterRefresher {
+
+    /**
+     * Shows a reading; called on the EDT.
+     */
+    public interface View {
+
+        void show(float level, float peak);
+    }
+
+    private static final class Binding {
+
+        private final MeterSlot slot;
+        private final View view;
+        // Level -0.0, which meters never publish, so the first tick always shows
+        private long shown = Long.MIN_VALUE;
+
+        Binding(MeterSlot slot, View view) {
+            this.slot = slot;
+            this.view = view;
+        }
+    }
+
+    private final List<Binding> bindings = new CopyOnWriteArrayList<>();
+    private final List<Runnable> tasks = new CopyOnWriteArrayList<>();
+    private final int fps;
+    private final Timer timer;
+
+    public MeterRefresher() {
+        this(Integer.getInteger("simplecodigo.meter.fps", 30));
+    }
+
+    /**
+     * @param fps display updates per second
+     */
+    public MeterRefresher(int fps) {
+        if (fps < 1) {
+            throw new IllegalArgumentException("Frecuencia de refresco inválida: " + fps);
+        }
+        this.fps = fps;
+        this.timer = new Timer(1000 / fps, e -> refresh());
+        timer.setCoalesce(true);
+    }
+
+    /**
+     * Shows the readings of {@code slot} on {@code view} from the next tick.
+     * Any thread.
+     */
+    public void add(MeterSlot slot, View view) {
+        bindings.add(new Binding(slot, view));
+    }
+
+    /**
+     * Runs {@code task} on the EDT at every tick, for views that poll their
+     * own source, such as {@link SpectrumView#refresh()}. Any thread.
+     */
+    public void add(Runnable task) {
+        tasks.add(task);
+    }
+
+    /**
+     * Stops showing {@code slot}. Any thread.
+     */
+    public void remove(MeterSlot slot) {
+        bindings.removeIf(binding -> binding.slot == slot);
+    }
+
+    public void remove(Runnable task) {
+        tasks.remove(task);
+    }
+
+    /**
+     * @return ticks per second
+     */
+    public int fps() {
+        return fps;
+    }
+
+    public void start() {
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    private void refresh() {
+        for (Binding binding : bindings) {
+            long reading = binding.slot.read();
+            if (reading != binding.shown) {
+                binding.shown = reading;
+                binding.view.show(MeterSlot.level(reading), MeterSlot.peak(reading));
+            }
+        }
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+}
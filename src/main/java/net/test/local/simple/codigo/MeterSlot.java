@@ -0,0 +1,43 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latest reading of one meter, handed from a capture thread to the display
+ * without locks or allocation. The level and the peak are packed as two
+ * float bit patterns into one {@code long}, so a reader always sees a pair
+ * that was published together; older readings are simply overwritten.
+ *
+ * @author pc
+ */
+public class MeterSlot {
+
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * Capture thread: replaces the reading.
+     */
+    public void publish(float level, float peak) {
+        state.setRelease((long) Float.floatToRawIntBits(level) << 32 | Float.floatToRawIntBits(peak) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the packed reading, for {@link #level(long)} and
+     * {@link #peak(long)}; equal values mean nothing changed
+     */
+    public long read() {
+        return state.getAcquire();
+    }
+
+    public static float level(long reading) {
+        return Float.intBitsToFloat((int) (reading >>> 32));
+    }
+
+    public static float peak(long reading) {
+        return Float.intBitsToFloat((int) reading);
+    }
+}
@@ -5,6 +5,11 @@
 package net.test.local.simple.codigo;
 
 import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Path;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.DataLine;
@@ -13,34 +18,77 @@ import javax.sound.sampled.TargetDataLine;
 import javax.swing.BorderFactory;
 import javax.swing.JFrame;
 import javax.swing.JProgressBar;
-import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
 
 /**
+ * With {@code -Dsimplecodigo.record=<file.wav>} the captured audio is also
+ * recorded by a {@link WavRecorder}, closed when the window is.
  *
  * @author pc
  */
 public class MicLevelMeter extends JFrame {
 
+    private static final AudioFormat FORMAT = new AudioFormat(44100.0f, 16, 1, true, true); // Mono, 16-bit, 44.1kHz
+
     private JProgressBar levelMeter;
     private TargetDataLine micLine;
+    // Written by the capture thread, read by the refresher on the EDT
+    private final MeterSlot slot = new MeterSlot();
+    private final MeterRefresher refresher = new MeterRefresher();
+    // Fed by the capture thread in spectrum mode, null otherwise
+    private final SpectrumAnalyzer analyzer;
+    // Where to record, or null
+    private final Path recording;
+    // Created by the capture thread, closed on the EDT; both under recorderLock
+    private final Object recorderLock = new Object();
+    private WavRecorder recorder;
+    private boolean closing;
 
     public MicLevelMeter() {
+        this(false);
+    }
+
+    /**
+     * @param spectrum also show a spectrum analyzer next to the VU bar
+     */
+    public MicLevelMeter(boolean spectrum) {
+        this(spectrum, null);
+    }
+
+    /**
+     * @param spectrum also show a spectrum analyzer next to the VU bar
+     * @param recording WAV file to record the capture to, or {@code null}
+     */
+    public MicLevelMeter(boolean spectrum, Path recording) {
+        this.recording = recording;
         setTitle("VUmetro del Mic");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setSize(124, 400);
-        levelMeter = new JProgressBar(0, 100);
-        levelMeter.setOrientation(SwingConstants.VERTICAL);
-        levelMeter.setStringPainted(true);
-        levelMeter.setBorder(
-                BorderFactory.createCompoundBorder(
-                        BorderFactory.createRaisedBevelBorder(),
-                        BorderFactory.createTitledBorder("Mic Level VUmeter")
-                )
-        );
-        add(levelMeter, BorderLayout.CENTER);
+        setSize(spectrum ? 124 + 480 : 124, 400);
+        levelMeter = MultiMeterPanel.createBar("Mic Level VUmeter");
+        if (spectrum) {
+            analyzer = new SpectrumAnalyzer(4096, FORMAT.getSampleRate(), 48, 20);
+            SpectrumView view = new SpectrumView(analyzer, refresher.fps());
+            view.setBorder(BorderFactory.createTitledBorder("Espectro"));
+            levelMeter.setPreferredSize(new Dimension(124, 400));
+            add(levelMeter, BorderLayout.WEST);
+            add(view, BorderLayout.CENTER);
+            refresher.add(view::refresh);
+        } else {
+            analyzer = null;
+            add(levelMeter, BorderLayout.CENTER);
+        }
+        // Runs before EXIT_ON_CLOSE exits, so the WAV header gets its sizes
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                stopRecording();
+            }
+        });
         setVisible(true);
 
+        refresher.add(slot, (vu, peakHold) -> MultiMeterPanel.showLevel(levelMeter, vu, peakHold));
+        refresher.start();
+
         // Start microphone capture and level meter in a new thread
         new Thread(this::captureMicrophoneLevel).start();
     }
@@ -48,7 +96,7 @@ public class MicLevelMeter extends JFrame {
     private void captureMicrophoneLevel() {
         try {
             // Set audio format for microphone capture
-            AudioFormat format = new AudioFormat(44100.0f, 16, 1, true, true); // Mono, 16-bit, 44.1kHz
+            AudioFormat format = FORMAT;
             DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
 
             // Check if the system supports the microphone input
@@ -64,6 +112,29 @@ public class MicLevelMeter extends JFrame {
 
             byte[] buffer = new byte[1024]; // Buffer for capturing audio data
             int bytesRead;
+            // Reads the samples in the line's own byte order
+            LevelMeterDsp meter = new LevelMeterDsp(format);
+            float[] samples = new float[buffer.length / format.getFrameSize()];
+            WavRecorder tee = null;
+            if (recording != null) {
+                try {
+                    tee = WavRecorder.start(recording, format, buffer.length / format.getFrameSize());
+                } catch (IOException e) {
+                    System.out.println("Error grabando: " + e.getMessage());
+                }
+            }
+            boolean closedMeanwhile;
+            synchronized (recorderLock) {
+                closedMeanwhile = closing;
+                if (!closedMeanwhile) {
+                    recorder = tee;
+                }
+            }
+            if (closedMeanwhile) {
+                // The window closed while the recorder was starting
+                closeRecorder(tee);
+                tee = null;
+            }
 
             while (true) {
                 // System.out.println("Nivel: " + (micLine.getLevel() < 0 ? "No se especifíca" : micLine.getLevel()));
@@ -71,12 +142,17 @@ public class MicLevelMeter extends JFrame {
                 bytesRead = micLine.read(buffer, 0, buffer.length);
 
                 if (bytesRead > 0) {
-                    // Calculate the RMS level of the audio data (Root Mean Square)
-                    double rms = calculateRMSLevel(buffer, bytesRead);
-
-                    // Convert RMS to a percentage scale for the level meter (0-100)
-                    int level = (int) (rms * 100);
-                    SwingUtilities.invokeLater(() -> levelMeter.setValue(level));
+                    meter.process(buffer, 0, bytesRead);
+                    // Only the latest reading matters; the refresher picks it up
+                    slot.publish(meter.vu(0), meter.peakHold(0));
+                    if (analyzer != null) {
+                        int frames = meter.decode(buffer, 0, bytesRead, 0, samples, 0);
+                        analyzer.process(samples, 0, frames);
+                    }
+                    if (tee != null) {
+                        // Dropped and counted if the disk is behind
+                        tee.offer(buffer, 0, bytesRead);
+                    }
                 }
             }
         } catch (LineUnavailableException e) {
@@ -84,19 +160,33 @@ public class MicLevelMeter extends JFrame {
         }
     }
 
-    // Method to calculate RMS level (volume) from the audio buffer
-    private double calculateRMSLevel(byte[] audioData, int bytesRead) {
-        long sum = 0;
-        for (int i = 0; i < bytesRead; i += 2) {
-            // Convert two bytes to a 16-bit value
-            int sample = (audioData[i + 1] << 8) | (audioData[i] & 0xFF);
-            sum += sample * sample;
+    private void stopRecording() {
+        WavRecorder current;
+        synchronized (recorderLock) {
+            closing = true;
+            current = recorder;
+            recorder = null;
+        }
+        closeRecorder(current);
+    }
+
+    private static void closeRecorder(WavRecorder current) {
+        if (current == null) {
+            return;
+        }
+        try {
+            current.close();
+        } catch (IOException e) {
+            System.out.println("Error grabando: " + e.getMessage());
         }
-        double mean = (double) sum / (bytesRead / 2);
-        return Math.sqrt(mean) / 32768.0; // Normalize to range 0-1
+        System.out.println(current.report());
     }
 
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(MicLevelMeter::new);
+        // Argumento opcional: "spectrum" para mostrar también el espectro
+        boolean spectrum = args.length > 0 && "spectrum".equalsIgnoreCase(args[0]);
+        String record = System.getProperty("simplecodigo.record");
+        Path recording = record == null ? null : Path.of(record);
+        SwingUtilities.invokeLater(() -> new MicLevelMeter(spectrum, recording));
     }
 }
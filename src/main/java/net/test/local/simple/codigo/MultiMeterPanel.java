@@ -0,0 +1,69 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.awt.GridLayout;
+import javax.swing.BorderFactory;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingConstants;
+
+/**
+ * A row of vertical VU bars, one per {@link MeterSlot}, all refreshed by one
+ * {@link MeterRefresher}. The bars show the VU reading on a dB scale and the
+ * peak hold as text.
+ *
+ * @author pc
+ */
+public class MultiMeterPanel extends JPanel {
+
+    // Range of the bars, in dB below full scale
+    static final double FLOOR_DB = -60;
+
+    private final MeterRefresher refresher;
+
+    public MultiMeterPanel(MeterRefresher refresher) {
+        super(new GridLayout(1, 0, 4, 0));
+        this.refresher = refresher;
+    }
+
+    /**
+     * Adds a bar for {@code slot}. EDT only.
+     */
+    public JProgressBar addMeter(String title, MeterSlot slot) {
+        JProgressBar bar = createBar(title);
+        add(bar);
+        refresher.add(slot, (level, peak) -> showLevel(bar, level, peak));
+        revalidate();
+        return bar;
+    }
+
+    /**
+     * @return a vertical 0-100 bar with a titled bevel border
+     */
+    public static JProgressBar createBar(String title) {
+        JProgressBar bar = new JProgressBar(0, 100);
+        bar.setOrientation(SwingConstants.VERTICAL);
+        bar.setStringPainted(true);
+        bar.setBorder(
+                BorderFactory.createCompoundBorder(
+                        BorderFactory.createRaisedBevelBorder(),
+                        BorderFactory.createTitledBorder(title)
+                )
+        );
+        return bar;
+    }
+
+    /**
+     * VU reading on a dB scale for the bar (0-100), peak hold in the label.
+     * EDT only.
+     */
+    public static void showLevel(JProgressBar bar, float vu, float peakHold) {
+        double vuDb = LevelMeterDsp.toDb(vu);
+        double holdDb = LevelMeterDsp.toDb(peakHold);
+        bar.setValue((int) Math.round(Math.max(0, (vuDb - FLOOR_DB) / -FLOOR_DB * 100)));
+        bar.setString(String.format("%.1f dB", Math.max(FLOOR_DB, holdDb)));
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+/**
+ * Block noise generator for audio. It replaces one synchronized
+ * {@code Random.nextGaussian()} call (Box-Muller, with {@code log} and
+ * {@code sqrt}) per sample with:
+ * <ul>
+ * <li>an unsynchronized SplitMix64 generator, one per channel, that can be
+ * {@link #split() split} into independent streams;</li>
+ * <li>the Marsaglia-Tsang ziggurat for Gaussian samples, which needs one
+ * random number, one table lookup and one multiply about 98% of the
+ * time;</li>
+ * <li>whole-block fills, so the hot loop stays in one method.</li>
+ * </ul>
+ * Instances are not thread safe; give every thread its own split.
+ *
+ * @author pc
+ */
+public class NoiseEngine {
+
+    /**
+     * Sample distribution.
+     */
+    public enum Distribution {
+        /**
+         * Normal distribution with standard deviation 1 before scaling.
+         */
+        GAUSSIAN,
+        /**
+         * Uniform in {@code [-1, 1)} before scaling.
+         */
+        UNIFORM
+    }
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    // Ziggurat with 128 layers (Marsaglia & Tsang, 2000)
+    private static final int LAYERS = 128;
+    private static final double R = 3.442619855899;
+    private static final double AREA = 9.91256303526217e-3;
+    private static final int[] KN = new int[LAYERS];
+    private static final double[] WN = new double[LAYERS];
+    private static final double[] FN = new double[LAYERS];
+
+    static {
+        double m1 = 2147483648.0;
+        double dn = R;
+        double tn = dn;
+        double q = AREA / Math.exp(-0.5 * dn * dn);
+        KN[0] = (int) (dn / q * m1);
+        KN[1] = 0;
+        WN[0] = q / m1;
+        WN[LAYERS - 1] = dn / m1;
+        FN[0] = 1.0;
+        FN[LAYERS - 1] = Math.exp(-0.5 * dn * dn);
+        for (int i = LAYERS - 2; i >= 1; i--) {
+            dn = Math.sqrt(-2 * Math.log(AREA / dn + Math.exp(-0.5 * dn * dn)));
+            KN[i + 1] = (int) (dn / tn * m1);
+            tn = dn;
+            FN[i] = Math.exp(-0.5 * dn * dn);
+            WN[i] = dn / m1;
+        }
+    }
+
+    private long state;
+    private final long gamma;
+
+    /**
+     * @param seed initial state; equal seeds give equal streams
+     */
+    public NoiseEngine(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private NoiseEngine(long seed, long gamma) {
+        this.state = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * @return a new engine whose stream is statistically independent of this
+     * one; this engine's stream advances by one value
+     */
+    public NoiseEngine split() {
+        return new NoiseEngine(mix64(nextSeed()), mixGamma(nextSeed()));
+    }
+
+    /**
+     * Fills {@code out[offset..offset+length)} with noise times
+     * {@code amplitude}.
+     */
+    public void fill(float[] out, int offset, int length, Distribution distribution, float amplitude) {
+        int end = offset + length;
+        if (distribution == Distribution.UNIFORM) {
+            // 24 random bits map exactly onto the float mantissa
+            float scale = amplitude * 0x1.0p-23f;
+            for (int i = offset; i < end; i++) {
+                out[i] = (int) (nextLong() >> 40) * scale;
+            }
+        } else {
+            for (int i = offset; i < end; i++) {
+                out[i] = (float) (nextGaussian() * amplitude);
+            }
+        }
+    }
+
+    /**
+     * @return one sample of the standard normal distribution
+     */
+    public double nextGaussian() {
+        long bits = nextLong();
+        int hz = (int) bits;
+        int iz = (int) (bits >>> 32) & (LAYERS - 1);
+        if (Math.abs(hz) < KN[iz]) {
+            return hz * WN[iz];
+        }
+        return slowGaussian(hz, iz);
+    }
+
+    // Rejection path: the tail for layer 0, the wedge otherwise
+    private double slowGaussian(int hz, int iz) {
+        while (true) {
+            double x = hz * WN[iz];
+            if (iz == 0) {
+                double y;
+                do {
+                    x = -Math.log(nextDouble()) / R;
+                    y = -Math.log(nextDouble());
+                } while (y + y < x * x);
+                return hz > 0 ? R + x : -R - x;
+            }
+            if (FN[iz] + nextDouble() * (FN[iz - 1] - FN[iz]) < Math.exp(-0.5 * x * x)) {
+                return x;
+            }
+            long bits = nextLong();
+            hz = (int) bits;
+            iz = (int) (bits >>> 32) & (LAYERS - 1);
+            if (Math.abs(hz) < KN[iz]) {
+                return hz * WN[iz];
+            }
+        }
+    }
+
+    /**
+     * @return uniform in {@code (0, 1]}, never zero so it is safe for
+     * {@code log}
+     */
+    double nextDouble() {
+        return ((nextLong() >>> 11) + 1) * 0x1.0p-53;
+    }
+
+    long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    private long nextSeed() {
+        return state += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // Same gamma selection as java.util.SplittableRandom: odd, enough bit flips
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
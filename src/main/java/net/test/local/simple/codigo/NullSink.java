@@ -0,0 +1,80 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Sink that discards the audio and only counts it, to measure how fast a
+ * generator runs without a sound device. The clock starts at the first
+ * write.
+ *
+ * @author pc
+ */
+public class NullSink implements PcmSink {
+
+    private final AudioFormat format;
+    private long bytes;
+    private long startNanos;
+    private long lastNanos;
+
+    public NullSink(AudioFormat format) {
+        this.format = format;
+    }
+
+    @Override
+    public AudioFormat format() {
+        return format;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) {
+        long now = System.nanoTime();
+        if (bytes == 0) {
+            startNanos = now;
+        }
+        bytes += length;
+        lastNanos = now;
+    }
+
+    @Override
+    public void write(PcmBuffer buffer) {
+        write(null, 0, buffer.byteLength());
+    }
+
+    @Override
+    public void close() {
+    }
+
+    public long bytesWritten() {
+        return bytes;
+    }
+
+    public long framesWritten() {
+        return bytes / format.getFrameSize();
+    }
+
+    /**
+     * @return frames per second between the first and the last write
+     */
+    public double framesPerSecond() {
+        long elapsed = lastNanos - startNanos;
+        return elapsed > 0 ? framesWritten() * 1e9 / elapsed : 0;
+    }
+
+    /**
+     * @return how many seconds of audio were produced per second of wall
+     * time; above 1 means faster than real time
+     */
+    public double realTimeFactor() {
+        return framesPerSecond() / format.getFrameRate();
+    }
+
+    @Override
+    public String report() {
+        return String.format("%d frames, %.1f MB, %.0f frames/s, %.1fx tiempo real",
+                framesWritten(), bytes / 1e6, framesPerSecond(), realTimeFactor());
+    }
+}
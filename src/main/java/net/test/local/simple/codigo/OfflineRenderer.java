@@ -0,0 +1,229 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Renders long generator output straight to a WAV file, as fast as the
+ * cores allow instead of in real time. The timeline is cut into chunks of a
+ * fixed number of frames; chunk {@code k} gets the {@code k}-th noise stream
+ * split from the master seed, so every chunk can be rendered on its own, in
+ * any order, on any thread. Each chunk is packed into a pooled off-heap
+ * buffer and written with a positional write at its final offset, and the
+ * header is written first with the final length, so nothing is patched or
+ * reordered afterwards.
+ * <p>
+ * The same seed, chunk size and program always give the same file,
+ * whatever the parallelism.
+ *
+ * @author pc
+ */
+public class OfflineRenderer {
+
+    /**
+     * What to render into one chunk.
+     */
+    public interface Program {
+
+        /**
+         * Renders frames {@code firstFrame .. firstFrame + frames} of the
+         * timeline.
+         *
+         * @param out one array per channel, overwritten from index 0
+         * @param noise this chunk's own noise stream
+         */
+        void render(long firstFrame, int frames, float[][] out, NoiseEngine noise);
+    }
+
+    /**
+     * {@link WhiteNoise}: noise on every channel.
+     */
+    public static Program whiteNoise(NoiseEngine.Distribution distribution, float amplitude) {
+        return (firstFrame, frames, out, noise) -> {
+            for (float[] channel : out) {
+                noise.fill(channel, 0, frames, distribution, amplitude);
+            }
+        };
+    }
+
+    /**
+     * {@link StereoNoise}: a sine on the left channel and Gaussian noise on
+     * the right. The sine is continuous across chunks.
+     */
+    public static Program stereoNoise(float sampleRate, double frequency) {
+        return (firstFrame, frames, out, noise) -> {
+            OscillatorBank sine = new OscillatorBank(sampleRate, OscillatorBank.Mode.WAVETABLE);
+            sine.add(frequency, 0.0, 1.0f);
+            sine.seek(firstFrame);
+            sine.render(out[0], 0, frames);
+            noise.fill(out[1], 0, frames, NoiseEngine.Distribution.GAUSSIAN, 1.0f);
+        };
+    }
+
+    private final AudioFormat format;
+    private final Program program;
+    private final long seed;
+    private final int chunkFrames;
+    private final int parallelism;
+
+    /**
+     * @param format output format, 16 or 24-bit signed PCM
+     * @param seed master seed
+     * @param chunkFrames frames per chunk; part of what defines the output
+     * @param parallelism rendering threads
+     */
+    public OfflineRenderer(AudioFormat format, Program program, long seed, int chunkFrames, int parallelism) {
+        if (chunkFrames < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("Bloque o paralelismo inválidos: " + chunkFrames + ", " + parallelism);
+        }
+        WavHeader.fileFormat(format);
+        this.format = format;
+        this.program = program;
+        this.seed = seed;
+        this.chunkFrames = chunkFrames;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Renders {@code totalFrames} frames into a new WAV file.
+     *
+     * @throws IOException if the file cannot be written
+     * @throws InterruptedException if interrupted while waiting for the
+     * workers
+     */
+    public void render(Path file, long totalFrames) throws IOException, InterruptedException {
+        // Little-endian output, so positional writes never need a swap
+        AudioFormat fileFormat = WavHeader.fileFormat(format);
+        long frameSize = fileFormat.getFrameSize();
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                PcmBufferPool pool = new PcmBufferPool(fileFormat, chunkFrames, parallelism)) {
+            ByteBuffer header = ByteBuffer.allocate(WavHeader.SIZE);
+            WavHeader.write(header, fileFormat, totalFrames * frameSize);
+            channel.write(header.flip(), 0);
+
+            ThreadLocal<Worker> workers = ThreadLocal.withInitial(() -> new Worker(fileFormat));
+            NoiseEngine master = new NoiseEngine(seed);
+            List<Future<Void>> pending = new ArrayList<>();
+            ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+            try {
+                for (long first = 0; first < totalFrames; first += chunkFrames) {
+                    long firstFrame = first;
+                    int frames = (int) Math.min(chunkFrames, totalFrames - first);
+                    // Split here, in chunk order, so chunk k always gets stream k
+                    NoiseEngine noise = master.split();
+                    pending.add(executor.submit(() -> {
+                        try (PcmBuffer buffer = pool.acquire()) {
+                            workers.get().render(program, firstFrame, frames, noise, buffer);
+                            buffer.writeTo(channel, WavHeader.SIZE + firstFrame * frameSize);
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<Void> chunk : pending) {
+                    chunk.get();
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                stop(executor, pending);
+            }
+        }
+    }
+
+    /**
+     * Cancels the tasks that have not started and waits, however long it
+     * takes, for the running ones. Running tasks are not interrupted: that
+     * would close a {@code FileChannel} they share in the middle of a
+     * positional write and hide the original error. Nothing they use may be
+     * freed before this returns. The caller's interrupt status is kept.
+     */
+    static void stop(ExecutorService executor, List<? extends Future<?>> pending) {
+        for (Future<?> task : pending) {
+            task.cancel(false);
+        }
+        executor.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Scratch space of one rendering thread.
+     */
+    private final class Worker {
+
+        private final PcmPacker packer;
+        private final float[][] channels;
+
+        Worker(AudioFormat fileFormat) {
+            this.packer = PcmPacker.forFormat(fileFormat);
+            this.channels = new float[fileFormat.getChannels()][chunkFrames];
+        }
+
+        void render(Program program, long firstFrame, int frames, NoiseEngine noise, PcmBuffer buffer) {
+            program.render(firstFrame, frames, channels, noise);
+            packer.pack(channels, 0, frames, buffer);
+        }
+    }
+
+    /**
+     * Renders a WAV file offline.
+     * {@code -Dsimplecodigo.parallelism} sets the threads.
+     *
+     * @param args output file, optional seconds (3600), optional program
+     * {@code stereo} or {@code white} ({@code stereo}), optional seed (1)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Uso: OfflineRenderer archivo.wav [segundos] [stereo|white] [semilla]");
+            return;
+        }
+        Path file = Path.of(args[0]);
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 3600;
+        boolean white = args.length > 2 && "white".equalsIgnoreCase(args[2]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1L;
+        int parallelism = Integer.getInteger("simplecodigo.parallelism", Runtime.getRuntime().availableProcessors());
+
+        float sampleRate = 44100;
+        AudioFormat format = new AudioFormat(sampleRate, 16, white ? 1 : 2, true, false);
+        Program program = white
+                ? whiteNoise(NoiseEngine.Distribution.GAUSSIAN, 1.0f)
+                : stereoNoise(sampleRate, 440.0);
+        long frames = (long) (seconds * sampleRate);
+
+        long start = System.nanoTime();
+        new OfflineRenderer(format, program, seed, (int) sampleRate, parallelism).render(file, frames);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%.0f s de audio en %.2f s (%.0fx tiempo real, %d hilos)%n",
+                seconds, elapsed, seconds / elapsed, parallelism);
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.util.Arrays;
+
+/**
+ * A bank of oscillators rendered block by block and summed into one mono
+ * buffer. Every oscillator has its own frequency, phase and amplitude, and
+ * nothing on the per-sample path calls {@code sin}, {@code cos} or
+ * {@code exp}:
+ * <ul>
+ * <li>{@link Mode#WAVETABLE} keeps a 32-bit phase accumulator that wraps for
+ * free on overflow and reads a precomputed table with linear interpolation.
+ * Non-sine waveforms are built additively as a set of tables, one per
+ * octave, and every oscillator reads the table whose highest harmonic still
+ * fits below Nyquist, so they do not alias.</li>
+ * <li>{@link Mode#PHASOR} (sine only) rotates a unit complex number by a
+ * fixed angle every sample, two multiplies and two adds, and pulls its
+ * magnitude back to one at the end of each block.</li>
+ * </ul>
+ * Instances are not thread safe.
+ *
+ * @author pc
+ */
+public class OscillatorBank {
+
+    /**
+     * How samples are generated.
+     */
+    public enum Mode {
+        WAVETABLE, PHASOR
+    }
+
+    /**
+     * Oscillator shape.
+     */
+    public enum Waveform {
+        SINE, TRIANGLE, SAW, SQUARE
+    }
+
+    private static final int TABLE_BITS = 11;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+    private static final int FRACTION_BITS = 32 - TABLE_BITS;
+    private static final int FRACTION_MASK = (1 << FRACTION_BITS) - 1;
+    private static final float FRACTION_SCALE = 1.0f / (1 << FRACTION_BITS);
+    private static final double PHASE_SCALE = 4294967296.0;
+    // Level k has at most TABLE_SIZE / 2 >> k harmonics; the last one is a sine
+    private static final int LEVELS = TABLE_BITS;
+    private static final float[][][] TABLES = new float[Waveform.values().length][][];
+
+    static {
+        double[] sine = new double[TABLE_SIZE];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            sine[i] = Math.sin(2 * Math.PI * i / TABLE_SIZE);
+        }
+        for (Waveform waveform : Waveform.values()) {
+            float[][] levels = new float[LEVELS][];
+            for (int level = 0; level < LEVELS; level++) {
+                levels[level] = waveform == Waveform.SINE && level > 0
+                        ? levels[0]
+                        : additive(waveform, sine, (TABLE_SIZE / 2) >> level);
+            }
+            TABLES[waveform.ordinal()] = levels;
+        }
+    }
+
+    private final float sampleRate;
+    private final Mode mode;
+    private int count;
+    private int[] phase = new int[0];
+    private int[] startPhase = new int[0];
+    private int[] increment = new int[0];
+    private float[] amplitude = new float[0];
+    private Waveform[] waveform = new Waveform[0];
+    private float[][] table = new float[0][];
+    private double[] re = new double[0];
+    private double[] im = new double[0];
+    private double[] cosStep = new double[0];
+    private double[] sinStep = new double[0];
+
+    /**
+     * @param sampleRate samples per second
+     * @param mode generation method for every oscillator of the bank
+     */
+    public OscillatorBank(float sampleRate, Mode mode) {
+        if (!(sampleRate > 0)) {
+            throw new IllegalArgumentException("Frecuencia de muestreo inválida: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        this.mode = mode;
+    }
+
+    /**
+     * Adds a sine oscillator.
+     *
+     * @return the oscillator number
+     * @see #add(Waveform, double, double, float)
+     */
+    public int add(double frequency, double phaseCycles, float gain) {
+        return add(Waveform.SINE, frequency, phaseCycles, gain);
+    }
+
+    /**
+     * Adds an oscillator.
+     *
+     * @param shape waveform; {@link Mode#PHASOR} banks only support
+     * {@link Waveform#SINE}
+     * @param frequency in Hz, below half the sample rate
+     * @param phaseCycles starting phase in cycles, {@code 0.25} is a quarter
+     * period
+     * @param gain peak amplitude
+     * @return the oscillator number
+     */
+    public int add(Waveform shape, double frequency, double phaseCycles, float gain) {
+        if (mode == Mode.PHASOR && shape != Waveform.SINE) {
+            throw new IllegalArgumentException("El modo PHASOR solo genera senos: " + shape);
+        }
+        // Before count moves, so a bad argument leaves no half-built oscillator
+        checkFrequency(frequency);
+        checkPhase(phaseCycles);
+        if (count == phase.length) {
+            grow(Math.max(8, count * 2));
+        }
+        int osc = count++;
+        waveform[osc] = shape;
+        amplitude[osc] = gain;
+        setFrequency(osc, frequency);
+        setPhase(osc, phaseCycles);
+        return osc;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Changes the frequency and keeps the current phase.
+     */
+    public void setFrequency(int osc, double frequency) {
+        checkIndex(osc);
+        checkFrequency(frequency);
+        int step = (int) Math.round(frequency / sampleRate * PHASE_SCALE);
+        increment[osc] = step;
+        table[osc] = TABLES[waveform[osc].ordinal()][level(step)];
+        // Rotate by exactly the quantized step so both modes play the same pitch
+        double w = 2 * Math.PI * Integer.toUnsignedLong(step) / PHASE_SCALE;
+        cosStep[osc] = Math.cos(w);
+        sinStep[osc] = Math.sin(w);
+    }
+
+    private void checkFrequency(double frequency) {
+        if (!(frequency >= 0 && frequency < sampleRate / 2)) {
+            throw new IllegalArgumentException("Frecuencia inválida: " + frequency);
+        }
+    }
+
+    private static void checkPhase(double phaseCycles) {
+        if (!Double.isFinite(phaseCycles)) {
+            throw new IllegalArgumentException("Fase inválida: " + phaseCycles);
+        }
+    }
+
+    /**
+     * @param phaseCycles new phase in cycles
+     */
+    public void setPhase(int osc, double phaseCycles) {
+        checkIndex(osc);
+        checkPhase(phaseCycles);
+        double cycles = phaseCycles - Math.floor(phaseCycles);
+        phase[osc] = (int) (long) (cycles * PHASE_SCALE);
+        startPhase[osc] = phase[osc];
+        re[osc] = Math.cos(2 * Math.PI * cycles);
+        im[osc] = Math.sin(2 * Math.PI * cycles);
+    }
+
+    /**
+     * Moves every oscillator to where it would be after {@code frame}
+     * samples from its last {@link #setPhase}, as if its frequency had not
+     * changed since. In wavetable mode the following samples are exactly the
+     * ones a continuous render would produce, which lets a long render be
+     * split into independent chunks.
+     */
+    public void seek(long frame) {
+        for (int osc = 0; osc < count; osc++) {
+            // Wraps modulo 2^32 exactly like the accumulator does
+            phase[osc] = (int) (startPhase[osc] + increment[osc] * frame);
+            double cycles = Integer.toUnsignedLong(phase[osc]) / PHASE_SCALE;
+            re[osc] = Math.cos(2 * Math.PI * cycles);
+            im[osc] = Math.sin(2 * Math.PI * cycles);
+        }
+    }
+
+    public void setAmplitude(int osc, float gain) {
+        checkIndex(osc);
+        amplitude[osc] = gain;
+    }
+
+    /**
+     * Renders the next {@code frames} samples of the sum of all oscillators.
+     *
+     * @param out destination, overwritten
+     * @param offset first sample to write
+     * @param frames number of samples
+     */
+    public void render(float[] out, int offset, int frames) {
+        Arrays.fill(out, offset, offset + frames, 0.0f);
+        if (mode == Mode.PHASOR) {
+            for (int osc = 0; osc < count; osc++) {
+                renderPhasor(osc, out, offset, frames);
+            }
+        } else {
+            for (int osc = 0; osc < count; osc++) {
+                renderWavetable(osc, out, offset, frames);
+            }
+        }
+    }
+
+    private void renderWavetable(int osc, float[] out, int offset, int frames) {
+        float[] t = table[osc];
+        float gain = amplitude[osc];
+        int p = phase[osc];
+        int step = increment[osc];
+        int end = offset + frames;
+        for (int i = offset; i < end; i++) {
+            int index = p >>> FRACTION_BITS;
+            float frac = (p & FRACTION_MASK) * FRACTION_SCALE;
+            float a = t[index];
+            out[i] += gain * (a + frac * (t[index + 1] - a));
+            p += step;
+        }
+        phase[osc] = p;
+    }
+
+    private void renderPhasor(int osc, float[] out, int offset, int frames) {
+        double c = cosStep[osc];
+        double s = sinStep[osc];
+        double x = re[osc];
+        double y = im[osc];
+        float gain = amplitude[osc];
+        int end = offset + frames;
+        for (int i = offset; i < end; i++) {
+            out[i] += gain * (float) y;
+            double nx = x * c - y * s;
+            y = x * s + y * c;
+            x = nx;
+        }
+        // One Newton step towards |z| = 1 is enough, the error per block is tiny
+        double k = (3 - (x * x + y * y)) * 0.5;
+        re[osc] = x * k;
+        im[osc] = y * k;
+        phase[osc] += increment[osc] * frames;
+    }
+
+    private void grow(int capacity) {
+        phase = Arrays.copyOf(phase, capacity);
+        startPhase = Arrays.copyOf(startPhase, capacity);
+        increment = Arrays.copyOf(increment, capacity);
+        amplitude = Arrays.copyOf(amplitude, capacity);
+        waveform = Arrays.copyOf(waveform, capacity);
+        table = Arrays.copyOf(table, capacity);
+        re = Arrays.copyOf(re, capacity);
+        im = Arrays.copyOf(im, capacity);
+        cosStep = Arrays.copyOf(cosStep, capacity);
+        sinStep = Arrays.copyOf(sinStep, capacity);
+    }
+
+    private void checkIndex(int osc) {
+        if (osc < 0 || osc >= count) {
+            throw new IndexOutOfBoundsException("Oscilador inexistente: " + osc);
+        }
+    }
+
+    // Smallest level whose harmonics all stay below Nyquist at this step,
+    // i.e. harmonics * step <= 2^31
+    private static int level(int step) {
+        long s = Integer.toUnsignedLong(step);
+        int level = 0;
+        while (level < LEVELS - 1 && ((long) (TABLE_SIZE / 2) >> level) * s > (1L << 31)) {
+            level++;
+        }
+        return level;
+    }
+
+    // Fourier series up to maxHarmonic, normalized to a peak of 1. The extra
+    // last entry repeats the first so interpolation never wraps
+    private static float[] additive(Waveform waveform, double[] sine, int maxHarmonic) {
+        double[] sum = new double[TABLE_SIZE];
+        for (int h = 1; h <= maxHarmonic; h++) {
+            double weight = switch (waveform) {
+                case SINE ->
+                    h == 1 ? 1 : 0;
+                case SAW ->
+                    (h % 2 == 1 ? 1.0 : -1.0) / h;
+                case SQUARE ->
+                    h % 2 == 1 ? 1.0 / h : 0;
+                case TRIANGLE ->
+                    h % 2 == 1 ? ((h / 2) % 2 == 0 ? 1.0 : -1.0) / ((double) h * h) : 0;
+            };
+            if (weight == 0) {
+                continue;
+            }
+            for (int i = 0; i < TABLE_SIZE; i++) {
+                sum[i] += weight * sine[(int) ((long) h * i % TABLE_SIZE)];
+            }
+        }
+        double peak = 0;
+        for (double v : sum) {
+            peak = Math.max(peak, Math.abs(v));
+        }
+        float[] t = new float[TABLE_SIZE + 1];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            t[i] = (float) (sum[i] / peak);
+        }
+        t[TABLE_SIZE] = t[0];
+        return t;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A block of interleaved PCM frames in off-heap memory, usually borrowed
+ * from a {@link PcmBufferPool} and given back with {@link #close()}. The
+ * byte order is the one of its {@link AudioFormat} and every typed accessor
+ * uses it explicitly, so nothing depends on the platform order.
+ * <p>
+ * The memory is also visible as a direct {@code ByteBuffer}, created once,
+ * so channels write it without copying it to the heap first. Java Sound
+ * lines only take {@code byte[]}; {@link #copyTo(byte[], int)} is the one
+ * copy they need.
+ * <p>
+ * Buffers are not thread safe; hand them between threads through a queue.
+ *
+ * @author pc
+ */
+public class PcmBuffer implements AutoCloseable {
+
+    private final PcmBufferPool pool;
+    private final MemorySegment segment;
+    private final ByteBuffer view;
+    private final AudioFormat format;
+    private final int frameSize;
+    private final ValueLayout.OfShort shortLayout;
+    private final ValueLayout.OfFloat floatLayout;
+    // Set while the buffer sits in its pool's free list
+    final AtomicBoolean inPool = new AtomicBoolean(true);
+    private int frames;
+
+    PcmBuffer(PcmBufferPool pool, MemorySegment segment, AudioFormat format) {
+        this.pool = pool;
+        this.segment = segment;
+        this.view = segment.asByteBuffer();
+        this.format = format;
+        this.frameSize = format.getFrameSize();
+        ByteOrder order = format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        this.shortLayout = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(order);
+        this.floatLayout = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(order);
+    }
+
+    public AudioFormat format() {
+        return format;
+    }
+
+    public ByteOrder order() {
+        return shortLayout.order();
+    }
+
+    public int capacityFrames() {
+        return (int) (segment.byteSize() / frameSize);
+    }
+
+    /**
+     * @return frames holding data
+     */
+    public int frames() {
+        return frames;
+    }
+
+    public void setFrames(int frames) {
+        if (frames < 0 || frames > capacityFrames()) {
+            throw new IllegalArgumentException("Frames fuera de rango: " + frames);
+        }
+        this.frames = frames;
+    }
+
+    public int byteLength() {
+        return frames * frameSize;
+    }
+
+    /**
+     * @return the whole memory, all {@link #capacityFrames()} frames
+     */
+    public MemorySegment segment() {
+        return segment;
+    }
+
+    /**
+     * @return the {@link #frames()} frames holding data
+     */
+    public MemorySegment data() {
+        return segment.asSlice(0, byteLength());
+    }
+
+    /**
+     * @param sample interleaved sample index, {@code frame * channels + channel}
+     */
+    public short getShort(int sample) {
+        return segment.getAtIndex(shortLayout, sample);
+    }
+
+    public void setShort(int sample, short value) {
+        segment.setAtIndex(shortLayout, sample, value);
+    }
+
+    /**
+     * For {@code PCM_FLOAT} formats.
+     *
+     * @param sample interleaved sample index
+     */
+    public float getFloat(int sample) {
+        return segment.getAtIndex(floatLayout, sample);
+    }
+
+    public void setFloat(int sample, float value) {
+        segment.setAtIndex(floatLayout, sample, value);
+    }
+
+    /**
+     * The data as a direct buffer from 0 to {@link #byteLength()}. The same
+     * view is returned every time, so it is only valid until the next call.
+     */
+    public ByteBuffer byteBuffer() {
+        return view.clear().limit(byteLength());
+    }
+
+    /**
+     * Writes the data to {@code channel} straight from off-heap memory.
+     *
+     * @return bytes written
+     */
+    public int writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer data = byteBuffer();
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+        return byteLength();
+    }
+
+    /**
+     * Positional version of {@link #writeTo(WritableByteChannel)}; the
+     * channel position does not change, so several threads can write
+     * different regions of one file.
+     */
+    public int writeTo(FileChannel channel, long position) throws IOException {
+        ByteBuffer data = byteBuffer();
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+        return byteLength();
+    }
+
+    /**
+     * Copies the data into a heap array, for APIs that need one.
+     */
+    public void copyTo(byte[] dst, int offset) {
+        MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, 0, dst, offset, byteLength());
+    }
+
+    /**
+     * Fills the buffer from a heap array.
+     *
+     * @param length bytes, whole frames
+     */
+    public void copyFrom(byte[] src, int offset, int length) {
+        if (length % frameSize != 0) {
+            throw new IllegalArgumentException("Bloque sin frames completos: " + length);
+        }
+        setFrames(length / frameSize);
+        MemorySegment.copy(src, offset, segment, ValueLayout.JAVA_BYTE, 0, length);
+    }
+
+    /**
+     * Gives the buffer back to its pool. The buffer must not be used
+     * afterwards.
+     */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.lang.foreign.Arena;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A fixed set of {@link PcmBuffer}s allocated off-heap once, up front, from
+ * a shared arena, so a long session keeps reusing the same memory and
+ * produces no garbage. Buffers may be acquired on one thread and closed on
+ * another. Closing the pool frees the memory; no buffer may be in use then.
+ *
+ * @author pc
+ */
+public class PcmBufferPool implements AutoCloseable {
+
+    // Cache line alignment, which also suits the vector packer
+    private static final long ALIGNMENT = 64;
+
+    private final Arena arena = Arena.ofShared();
+    private final BlockingQueue<PcmBuffer> free;
+    private final AudioFormat format;
+    private final int framesPerBuffer;
+
+    /**
+     * @param framesPerBuffer capacity of every buffer
+     * @param buffers number of buffers
+     */
+    public PcmBufferPool(AudioFormat format, int framesPerBuffer, int buffers) {
+        if (framesPerBuffer < 1 || buffers < 1) {
+            throw new IllegalArgumentException("Pool inválido: " + buffers + " x " + framesPerBuffer);
+        }
+        this.format = format;
+        this.framesPerBuffer = framesPerBuffer;
+        this.free = new ArrayBlockingQueue<>(buffers);
+        long bytes = (long) framesPerBuffer * format.getFrameSize();
+        for (int i = 0; i < buffers; i++) {
+            free.add(new PcmBuffer(this, arena.allocate(bytes, ALIGNMENT), format));
+        }
+    }
+
+    public AudioFormat format() {
+        return format;
+    }
+
+    public int framesPerBuffer() {
+        return framesPerBuffer;
+    }
+
+    /**
+     * Waits for a free buffer.
+     */
+    public PcmBuffer acquire() throws InterruptedException {
+        return checkedOut(free.take());
+    }
+
+    /**
+     * @return a free buffer, or {@code null} at once if all are in use
+     */
+    public PcmBuffer tryAcquire() {
+        PcmBuffer buffer = free.poll();
+        return buffer == null ? null : checkedOut(buffer);
+    }
+
+    private static PcmBuffer checkedOut(PcmBuffer buffer) {
+        buffer.inPool.set(false);
+        return buffer;
+    }
+
+    /**
+     * @return buffers not in use right now
+     */
+    public int available() {
+        return free.size();
+    }
+
+    void release(PcmBuffer buffer) {
+        // Checked before the queue: a second release must never hand the memory out twice
+        if (!buffer.inPool.compareAndSet(false, true)) {
+            throw new IllegalStateException("Búfer devuelto dos veces");
+        }
+        buffer.setFrames(0);
+        free.add(buffer);
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+}
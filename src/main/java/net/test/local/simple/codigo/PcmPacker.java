@@ -0,0 +1,248 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Converts blocks of float or double channel samples in {@code [-1, 1]} to
+ * interleaved signed 16- or 24-bit PCM in either byte order. Values are
+ * scaled, clipped to the sample range and truncated toward zero; NaN becomes
+ * silence.
+ * <p>
+ * When the {@code jdk.incubator.vector} module is present (run with
+ * {@code --add-modules jdk.incubator.vector}) the conversion and
+ * interleaving use the Vector API, otherwise a scalar loop does the same
+ * work. Both produce identical bytes. Output can go to a {@code byte[]}, a
+ * {@link PcmBuffer} or any other {@code MemorySegment}. {@code -Dsimplecodigo.pcm.scalar=true}
+ * forces the scalar path.
+ * <p>
+ * Instances keep scratch space and are not thread safe.
+ *
+ * @author pc
+ */
+public class PcmPacker {
+
+    static final boolean VECTOR_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && !Boolean.getBoolean("simplecodigo.pcm.scalar");
+
+    private final int channels;
+    private final int bits;
+    private final boolean bigEndian;
+    private final int maxValue;
+    private final VectorPcmPacker vector;
+    private byte[] scratch = new byte[0];
+
+    private static final ValueLayout.OfShort SHORT_BE = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfShort SHORT_LE = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * @param channels interleaved channels per frame
+     * @param bits 16 or 24
+     * @param bigEndian byte order of each sample
+     */
+    public PcmPacker(int channels, int bits, boolean bigEndian) {
+        this(channels, bits, bigEndian, VECTOR_AVAILABLE);
+    }
+
+    PcmPacker(int channels, int bits, boolean bigEndian, boolean vectorized) {
+        if (channels < 1) {
+            throw new IllegalArgumentException("Canales inválidos: " + channels);
+        }
+        if (bits != 16 && bits != 24) {
+            throw new IllegalArgumentException("Solo 16 o 24 bits: " + bits);
+        }
+        this.channels = channels;
+        this.bits = bits;
+        this.bigEndian = bigEndian;
+        this.maxValue = (1 << (bits - 1)) - 1;
+        this.vector = vectorized ? new VectorPcmPacker(channels, bits, bigEndian, maxValue) : null;
+    }
+
+    /**
+     * @param format signed PCM, 16 or 24 bits
+     * @return a packer for that format
+     */
+    public static PcmPacker forFormat(AudioFormat format) {
+        if (!AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding())) {
+            throw new IllegalArgumentException("Solo PCM con signo: " + format);
+        }
+        return new PcmPacker(format.getChannels(), format.getSampleSizeInBits(), format.isBigEndian());
+    }
+
+    public int frameSize() {
+        return channels * bits / 8;
+    }
+
+    public boolean isVectorized() {
+        return vector != null;
+    }
+
+    /**
+     * Packs {@code frames} frames.
+     *
+     * @param in one array per channel
+     * @param inOffset first sample to read from every channel array
+     * @param frames number of frames
+     * @param out destination, needs {@code frames * frameSize()} bytes
+     * @param outOffset first byte to write
+     */
+    public void pack(float[][] in, int inOffset, int frames, byte[] out, int outOffset) {
+        checkChannels(in.length);
+        if (vector != null) {
+            vector.pack(in, inOffset, frames, MemorySegment.ofArray(out), outOffset);
+            return;
+        }
+        int bytes = bits / 8;
+        for (int c = 0; c < channels; c++) {
+            float[] samples = in[c];
+            float scale = maxValue;
+            int pos = outOffset + c * bytes;
+            for (int i = 0; i < frames; i++) {
+                float x = samples[inOffset + i] * scale;
+                put(out, pos, (int) Math.max(-scale, Math.min(scale, x)));
+                pos += channels * bytes;
+            }
+        }
+    }
+
+    /**
+     * Packs {@code frames} frames into {@code out}, which must have this
+     * packer's format, and sets its frame count.
+     */
+    public void pack(float[][] in, int inOffset, int frames, PcmBuffer out) {
+        checkBuffer(out, frames);
+        pack(in, inOffset, frames, out.segment(), 0);
+        out.setFrames(frames);
+    }
+
+    /**
+     * Same as {@link #pack(float[][], int, int, byte[], int)} for any
+     * segment, on or off the heap.
+     */
+    public void pack(float[][] in, int inOffset, int frames, MemorySegment out, long outOffset) {
+        checkChannels(in.length);
+        if (vector != null) {
+            vector.pack(in, inOffset, frames, out, outOffset);
+            return;
+        }
+        // Byte array stores are much faster than per-sample segment stores
+        byte[] bytes = scratch(frames * frameSize());
+        pack(in, inOffset, frames, bytes, 0);
+        MemorySegment.copy(bytes, 0, out, ValueLayout.JAVA_BYTE, outOffset, frames * frameSize());
+    }
+
+    /**
+     * Same as {@link #pack(float[][], int, int, byte[], int)} for double
+     * samples.
+     */
+    public void pack(double[][] in, int inOffset, int frames, byte[] out, int outOffset) {
+        checkChannels(in.length);
+        if (vector != null) {
+            vector.pack(in, inOffset, frames, MemorySegment.ofArray(out), outOffset);
+            return;
+        }
+        int bytes = bits / 8;
+        for (int c = 0; c < channels; c++) {
+            double[] samples = in[c];
+            double scale = maxValue;
+            int pos = outOffset + c * bytes;
+            for (int i = 0; i < frames; i++) {
+                double x = samples[inOffset + i] * scale;
+                put(out, pos, (int) Math.max(-scale, Math.min(scale, x)));
+                pos += channels * bytes;
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #pack(float[][], int, int, PcmBuffer)} for double
+     * samples.
+     */
+    public void pack(double[][] in, int inOffset, int frames, PcmBuffer out) {
+        checkBuffer(out, frames);
+        pack(in, inOffset, frames, out.segment(), 0);
+        out.setFrames(frames);
+    }
+
+    /**
+     * Same as {@link #pack(float[][], int, int, MemorySegment, long)} for
+     * double samples.
+     */
+    public void pack(double[][] in, int inOffset, int frames, MemorySegment out, long outOffset) {
+        checkChannels(in.length);
+        if (vector != null) {
+            vector.pack(in, inOffset, frames, out, outOffset);
+            return;
+        }
+        // Byte array stores are much faster than per-sample segment stores
+        byte[] bytes = scratch(frames * frameSize());
+        pack(in, inOffset, frames, bytes, 0);
+        MemorySegment.copy(bytes, 0, out, ValueLayout.JAVA_BYTE, outOffset, frames * frameSize());
+    }
+
+    private void put(byte[] out, int pos, int value) {
+        put(out, pos, value, bits, bigEndian);
+    }
+
+    static void put(byte[] out, int pos, int value, int bits, boolean bigEndian) {
+        if (bits == 16) {
+            if (bigEndian) {
+                out[pos] = (byte) (value >> 8);
+                out[pos + 1] = (byte) value;
+            } else {
+                out[pos] = (byte) value;
+                out[pos + 1] = (byte) (value >> 8);
+            }
+        } else if (bigEndian) {
+            out[pos] = (byte) (value >> 16);
+            out[pos + 1] = (byte) (value >> 8);
+            out[pos + 2] = (byte) value;
+        } else {
+            out[pos] = (byte) value;
+            out[pos + 1] = (byte) (value >> 8);
+            out[pos + 2] = (byte) (value >> 16);
+        }
+    }
+
+    static void put(MemorySegment out, long pos, int value, int bits, boolean bigEndian) {
+        if (bits == 16) {
+            out.set(bigEndian ? SHORT_BE : SHORT_LE, pos, (short) value);
+        } else if (bigEndian) {
+            out.set(ValueLayout.JAVA_BYTE, pos, (byte) (value >> 16));
+            out.set(ValueLayout.JAVA_BYTE, pos + 1, (byte) (value >> 8));
+            out.set(ValueLayout.JAVA_BYTE, pos + 2, (byte) value);
+        } else {
+            out.set(ValueLayout.JAVA_BYTE, pos, (byte) value);
+            out.set(ValueLayout.JAVA_BYTE, pos + 1, (byte) (value >> 8));
+            out.set(ValueLayout.JAVA_BYTE, pos + 2, (byte) (value >> 16));
+        }
+    }
+
+    private byte[] scratch(int bytes) {
+        if (scratch.length < bytes) {
+            scratch = new byte[bytes];
+        }
+        return scratch;
+    }
+
+    private void checkBuffer(PcmBuffer out, int frames) {
+        if (out.format().getFrameSize() != frameSize() || out.format().isBigEndian() != bigEndian) {
+            throw new IllegalArgumentException("Formato de búfer distinto: " + out.format());
+        }
+        if (frames > out.capacityFrames()) {
+            throw new IllegalArgumentException("Búfer demasiado chico: " + frames);
+        }
+    }
+
+    private void checkChannels(int given) {
+        if (given != channels) {
+            throw new IllegalArgumentException("Se esperaban " + channels + " canales, hay " + given);
+        }
+    }
+}
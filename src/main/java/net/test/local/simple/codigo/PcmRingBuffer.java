@@ -0,0 +1,356 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free single-producer/single-consumer ring of PCM frames. One thread
+ * writes, one other thread reads; no locks are taken and no objects are
+ * allocated after construction.
+ * <p>
+ * The read and write positions only grow and are published with
+ * release/acquire ordering. Each side keeps a cached copy of the other
+ * side's position and only reads the real one when the cache says the ring
+ * is full (or empty), so in steady state the two threads do not touch each
+ * other's cache lines. Positions, caches and counters live in one
+ * {@code long[]} with 128 bytes between the producer's and the consumer's
+ * slots, which keeps them off each other's cache lines whatever the JVM
+ * does with field layout.
+ * <p>
+ * Backpressure is decided by {@link Backpressure}: a {@code BLOCK} producer
+ * fills the ring up to the high watermark and then sleeps until the
+ * consumer has drained it down to the low watermark, so it wakes up once per
+ * burst instead of once per frame; a {@code DROP} producer never waits and
+ * counts an overrun for every write that did not fit. The consumer counts an
+ * underrun every time it finds the ring empty while the producer is open.
+ * A consumer that stops for good calls {@link #fail()}, so a producer
+ * waiting for room gets an exception instead of waiting forever.
+ *
+ * @author pc
+ */
+public class PcmRingBuffer {
+
+    /**
+     * What a producer does when the ring is full.
+     */
+    public enum Backpressure {
+        /**
+         * Wait for the consumer, using the watermarks.
+         */
+        BLOCK,
+        /**
+         * Drop the frames that do not fit and count an overrun.
+         */
+        DROP
+    }
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // 16 longs = 128 bytes, enough for adjacent cache line prefetch
+    private static final int PAD = 16;
+    // Producer slots
+    private static final int WRITE = PAD;
+    private static final int READ_CACHE = PAD + 1;
+    private static final int OVERRUNS = PAD + 2;
+    private static final int DROPPED = PAD + 3;
+    private static final int WAITS = PAD + 4;
+    // Consumer slots
+    private static final int READ = 3 * PAD;
+    private static final int WRITE_CACHE = 3 * PAD + 1;
+    private static final int UNDERRUNS = 3 * PAD + 2;
+
+    private final long[] slots = new long[5 * PAD];
+    private final byte[] data;
+    private final int frameSize;
+    private final int capacity;
+    private final int mask;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final Backpressure backpressure;
+    private volatile Thread parkedProducer;
+    private volatile Thread parkedConsumer;
+    private volatile boolean closed;
+    private volatile boolean failed;
+    // Consumer only: set while the ring has been empty since the last underrun
+    private boolean starved = true;
+
+    /**
+     * @param frameSize bytes per frame
+     * @param capacityFrames ring size, rounded up to a power of two
+     * @param highWatermark fill level, in frames, where a blocking producer
+     * stops
+     * @param lowWatermark fill level, in frames, where it resumes
+     * @param backpressure producer policy when the ring is full
+     */
+    public PcmRingBuffer(int frameSize, int capacityFrames, int highWatermark, int lowWatermark, Backpressure backpressure) {
+        if (frameSize < 1 || capacityFrames < 1 || capacityFrames > (1 << 29) / frameSize) {
+            throw new IllegalArgumentException("Tamaño de anillo inválido: " + capacityFrames + " x " + frameSize);
+        }
+        this.capacity = capacityFor(capacityFrames);
+        if (lowWatermark < 0 || lowWatermark >= highWatermark || highWatermark > capacity) {
+            throw new IllegalArgumentException("Marcas inválidas: " + lowWatermark + "/" + highWatermark);
+        }
+        this.frameSize = frameSize;
+        this.mask = capacity - 1;
+        this.data = new byte[capacity * frameSize];
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.backpressure = backpressure;
+    }
+
+    /**
+     * @return the capacity a ring asked for {@code frames} frames gets: the
+     * next power of two
+     */
+    public static int capacityFor(int frames) {
+        return frames <= 1 ? 1 : Integer.highestOneBit(frames - 1) << 1;
+    }
+
+    public int frameSize() {
+        return frameSize;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return frames waiting to be read; exact only on the consumer thread
+     */
+    public int fill() {
+        return (int) ((long) SLOTS.getAcquire(slots, WRITE) - (long) SLOTS.getAcquire(slots, READ));
+    }
+
+    /**
+     * @return frames the producer has put in the ring since it was created;
+     * exact only on the producer thread
+     */
+    public long framesWritten() {
+        return (long) SLOTS.getAcquire(slots, WRITE);
+    }
+
+    // ---- Producer side ----
+
+    /**
+     * Writes whole frames according to the backpressure policy. A
+     * {@code BLOCK} ring returns once every frame is in; a {@code DROP} ring
+     * returns at once and drops what does not fit.
+     *
+     * @param length bytes, a multiple of the frame size
+     * @throws InterruptedException if interrupted while waiting for room
+     * @throws IllegalStateException if the consumer failed while the
+     * producer waited for room
+     */
+    public void write(byte[] src, int offset, int length) throws InterruptedException {
+        write(src, null, offset, frames(length));
+    }
+
+    /**
+     * Same as {@link #write(byte[], int, int)} for the whole of an on- or
+     * off-heap segment.
+     */
+    public void write(MemorySegment src) throws InterruptedException {
+        write(null, src, 0, frames(Math.toIntExact(src.byteSize())));
+    }
+
+    // Exactly one of array and segment is set
+    private void write(byte[] array, MemorySegment segment, long offset, int frames) throws InterruptedException {
+        if (backpressure == Backpressure.DROP) {
+            int written = offer(array, segment, offset, frames, capacity);
+            if (written < frames) {
+                SLOTS.setOpaque(slots, OVERRUNS, slots[OVERRUNS] + 1);
+                SLOTS.setOpaque(slots, DROPPED, slots[DROPPED] + frames - written);
+            }
+            return;
+        }
+        while (frames > 0) {
+            int written = offer(array, segment, offset, frames, highWatermark);
+            offset += written * frameSize;
+            frames -= written;
+            if (frames > 0) {
+                awaitLowWatermark();
+            }
+        }
+    }
+
+    /**
+     * Marks the end of the stream. The consumer reads what is left and then
+     * sees {@code -1}.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(parkedConsumer);
+    }
+
+    /**
+     * Tells the producer that nothing will read the ring any more: a waiting
+     * {@code BLOCK} producer wakes up and its write throws. Consumer side.
+     */
+    public void fail() {
+        failed = true;
+        LockSupport.unpark(parkedProducer);
+    }
+
+    // Copies up to `frames` frames without letting the fill pass `limit`
+    private int offer(byte[] array, MemorySegment segment, long offset, int frames, int limit) {
+        long write = slots[WRITE];
+        long read = slots[READ_CACHE];
+        if (write - read + frames > limit) {
+            read = (long) SLOTS.getAcquire(slots, READ);
+            slots[READ_CACHE] = read;
+        }
+        int n = (int) Math.min(frames, limit - (write - read));
+        if (n <= 0) {
+            return 0;
+        }
+        int start = (int) (write & mask);
+        int first = Math.min(n, capacity - start);
+        copyIn(array, segment, offset, start * frameSize, first * frameSize);
+        copyIn(array, segment, offset + first * frameSize, 0, (n - first) * frameSize);
+        SLOTS.setRelease(slots, WRITE, write + n);
+        Thread consumer = parkedConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return n;
+    }
+
+    private void copyIn(byte[] array, MemorySegment segment, long from, int to, int bytes) {
+        if (array != null) {
+            System.arraycopy(array, (int) from, data, to, bytes);
+        } else {
+            MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, from, data, to, bytes);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the consumer has {@link #fail()}ed
+     */
+    private void awaitLowWatermark() throws InterruptedException {
+        SLOTS.setOpaque(slots, WAITS, slots[WAITS] + 1);
+        parkedProducer = Thread.currentThread();
+        try {
+            // The timed park covers a wakeup racing with this check
+            while (slots[WRITE] - (long) SLOTS.getAcquire(slots, READ) > lowWatermark) {
+                if (failed) {
+                    throw new IllegalStateException("El lector del anillo terminó");
+                }
+                LockSupport.parkNanos(this, PARK_NANOS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            parkedProducer = null;
+        }
+    }
+
+    // ---- Consumer side ----
+
+    /**
+     * Reads up to {@code length} bytes of whole frames, waiting until at
+     * least one frame is available.
+     *
+     * @return bytes read, or {@code -1} once the ring is closed and empty
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int read(byte[] dst, int offset, int length) throws InterruptedException {
+        int frames = frames(length);
+        while (true) {
+            // Read the flag first: once it is set every frame is visible
+            boolean done = closed;
+            int n = poll(dst, offset, frames);
+            if (n > 0) {
+                return n * frameSize;
+            }
+            if (done) {
+                return -1;
+            }
+            if (!starved) {
+                starved = true;
+                SLOTS.setOpaque(slots, UNDERRUNS, slots[UNDERRUNS] + 1);
+            }
+            parkedConsumer = Thread.currentThread();
+            try {
+                if ((long) SLOTS.getAcquire(slots, WRITE) == slots[READ] && !closed) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            } finally {
+                parkedConsumer = null;
+            }
+        }
+    }
+
+    private int poll(byte[] dst, int offset, int frames) {
+        long read = slots[READ];
+        long write = slots[WRITE_CACHE];
+        if (write - read < frames) {
+            write = (long) SLOTS.getAcquire(slots, WRITE);
+            slots[WRITE_CACHE] = write;
+        }
+        int n = (int) Math.min(frames, write - read);
+        if (n <= 0) {
+            return 0;
+        }
+        int start = (int) (read & mask);
+        int first = Math.min(n, capacity - start);
+        System.arraycopy(data, start * frameSize, dst, offset, first * frameSize);
+        System.arraycopy(data, 0, dst, offset + first * frameSize, (n - first) * frameSize);
+        SLOTS.setRelease(slots, READ, read + n);
+        starved = false;
+        Thread producer = parkedProducer;
+        if (producer != null && write - (read + n) <= lowWatermark) {
+            LockSupport.unpark(producer);
+        }
+        return n;
+    }
+
+    // ---- Counters, readable from any thread ----
+
+    /**
+     * @return times the consumer found the ring empty
+     */
+    public long underruns() {
+        return (long) SLOTS.getOpaque(slots, UNDERRUNS);
+    }
+
+    /**
+     * @return {@code DROP} writes that did not fit
+     */
+    public long overruns() {
+        return (long) SLOTS.getOpaque(slots, OVERRUNS);
+    }
+
+    /**
+     * @return frames lost to overruns
+     */
+    public long droppedFrames() {
+        return (long) SLOTS.getOpaque(slots, DROPPED);
+    }
+
+    /**
+     * @return times a {@code BLOCK} producer waited for the low watermark
+     */
+    public long producerWaits() {
+        return (long) SLOTS.getOpaque(slots, WAITS);
+    }
+
+    private int frames(int length) {
+        if (length % frameSize != 0) {
+            throw new IllegalArgumentException("Bloque sin frames completos: " + length);
+        }
+        return length / frameSize;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.foreign.ValueLayout;
+import java.nio.file.Path;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Destination for blocks of interleaved PCM frames. Generators write to a
+ * sink instead of a {@code SourceDataLine} so the same code can play on a
+ * sound device, render to a WAV file, or run headless as fast as the CPU
+ * allows.
+ * <p>
+ * The sink is chosen with {@code -Dsimplecodigo.sink}: {@code line} (the
+ * default) for the sound device, {@code null} to discard the audio and
+ * measure throughput, or a file name for a WAV file.
+ * {@code -Dsimplecodigo.duration} (seconds of audio) stops a generator
+ * after that much output, which the non-line sinks usually want. Unless
+ * {@code -Dsimplecodigo.ring.frames=0}, line and null sinks are wrapped in a
+ * {@link BufferedPcmSink} of that many frames (8192 by default) so the
+ * generator runs on its own thread. WAV files are not: they never block for
+ * long and take pooled buffers without copying them, which a ring would
+ * undo.
+ * {@code -Dsimplecodigo.latency=low} opens the line in the low-latency mode
+ * of {@link LatencyTuner} instead, without a ring.
+ *
+ * @author pc
+ */
+public interface PcmSink extends Closeable {
+
+    /**
+     * @return the format of the frames this sink accepts
+     */
+    AudioFormat format();
+
+    /**
+     * Writes whole frames. Line sinks block until there is room, the others
+     * return as soon as the bytes are buffered.
+     *
+     * @param data interleaved frames in {@link #format()}
+     * @param offset first byte
+     * @param length number of bytes, a multiple of the frame size
+     */
+    void write(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Writes the frames of an off-heap buffer in {@link #format()}. The
+     * buffer can be reused as soon as this returns. Sinks that can take the
+     * memory directly override this; the default copies it to the heap.
+     */
+    default void write(PcmBuffer buffer) throws IOException {
+        byte[] bytes = buffer.data().toArray(ValueLayout.JAVA_BYTE);
+        write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param preferred the block size the generator would use on its own
+     * @return frames per write that suit this sink; a low-latency line sink
+     * wants its tuned block
+     */
+    default int blockFrames(int preferred) {
+        return preferred;
+    }
+
+    /**
+     * Waits until everything written so far has been played or stored.
+     */
+    default void drain() throws IOException {
+    }
+
+    /**
+     * @return a one line summary of what the sink measured, or {@code null}
+     * if it measures nothing
+     */
+    default String report() {
+        return null;
+    }
+
+    /**
+     * Opens the sink selected by {@code simplecodigo.sink}.
+     *
+     * @param format frames that will be written
+     * @param bufferBytes buffer size hint for line sinks
+     * @throws LineUnavailableException if the sound device cannot be opened
+     * @throws IOException if the WAV file cannot be created
+     */
+    static PcmSink open(AudioFormat format, int bufferBytes) throws LineUnavailableException, IOException {
+        return open(format, bufferBytes, null);
+    }
+
+    /**
+     * Same as {@link #open(AudioFormat, int)}; a line sink records every
+     * write in {@code metrics} unless it is {@code null}.
+     */
+    static PcmSink open(AudioFormat format, int bufferBytes, AudioMetrics metrics) throws LineUnavailableException, IOException {
+        if (LatencyTuner.isRequested() && "line".equalsIgnoreCase(System.getProperty("simplecodigo.sink", "line"))) {
+            // No ring: it would queue its own latency in front of the line
+            return LineSink.openLowLatency(format, metrics);
+        }
+        PcmSink sink = openUnbuffered(format, bufferBytes, metrics);
+        int ringFrames = Integer.getInteger("simplecodigo.ring.frames", 8192);
+        return ringFrames > 0 && !(sink instanceof WavFileSink) ? new BufferedPcmSink(sink, ringFrames) : sink;
+    }
+
+    private static PcmSink openUnbuffered(AudioFormat format, int bufferBytes, AudioMetrics metrics)
+            throws LineUnavailableException, IOException {
+        String sink = System.getProperty("simplecodigo.sink", "line");
+        if ("line".equalsIgnoreCase(sink)) {
+            return LineSink.open(format, bufferBytes, metrics);
+        }
+        if ("null".equalsIgnoreCase(sink)) {
+            return new NullSink(format);
+        }
+        return WavFileSink.create(Path.of(sink), format);
+    }
+
+    /**
+     * @return the frames a generator should produce according to
+     * {@code simplecodigo.duration}, or {@code Long.MAX_VALUE} to run until
+     * stopped
+     */
+    static long frameLimit(AudioFormat format) {
+        String seconds = System.getProperty("simplecodigo.duration");
+        if (seconds == null) {
+            return Long.MAX_VALUE;
+        }
+        return (long) (Double.parseDouble(seconds) * format.getFrameRate());
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Path;
+
+/**
+ * Decodes the pyramid message: row {@code r} (1-based) holds {@code r} words
+ * and ends at the triangular position {@code r(r+1)/2}, so the message is the
+ * words at positions 1, 3, 6, 10, ... of the sorted input. Instead of walking
+ * every entry with row/column counters, the positions are computed directly
+ * and only those {@code O(sqrt n)} entries are read.
+ *
+ * @author pc
+ */
+public class PyramidDecoder {
+
+    private PyramidDecoder() {
+    }
+
+    /**
+     * @param row 1-based row number
+     * @return the 1-based position of the last word of that row
+     */
+    public static long rowEnd(int row) {
+        return (long) row * (row + 1) / 2;
+    }
+
+    /**
+     * @param entries number of sorted entries
+     * @return number of rows that are complete, i.e. the largest {@code r}
+     * with {@code r(r+1)/2 <= entries}
+     */
+    public static int completeRows(long entries) {
+        int rows = (int) ((Math.sqrt(8.0 * entries + 1) - 1) / 2);
+        // Correct the floating point estimate by at most one in either direction
+        while (rowEnd(rows + 1) <= entries) {
+            rows++;
+        }
+        while (rows > 0 && rowEnd(rows) > entries) {
+            rows--;
+        }
+        return rows;
+    }
+
+    /**
+     * @param key candidate key
+     * @return whether {@code key} is a triangular number {@code >= 1}
+     */
+    public static boolean isTriangular(long key) {
+        return key >= 1 && rowEnd(completeRows(key)) == key;
+    }
+
+    /**
+     * Sorted positions of the last word of every complete row.
+     *
+     * @param index sorted input
+     * @return 0-based positions into {@code index}
+     */
+    public static int[] positions(KeyValueIndex index) {
+        int[] positions = new int[completeRows(index.size())];
+        for (int row = 1; row <= positions.length; row++) {
+            positions[row - 1] = (int) (rowEnd(row) - 1);
+        }
+        return positions;
+    }
+
+    /**
+     * Decodes the message of an index already in memory.
+     *
+     * @param index sorted input
+     * @return the last word of every complete row, in row order
+     */
+    public static String[] decode(KeyValueIndex index) {
+        int[] positions = positions(index);
+        String[] words = new String[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            words[i] = index.valueAt(positions[i]);
+        }
+        return words;
+    }
+
+    /**
+     * Copies the last word of every complete row into a small heap index,
+     * one entry per row, that no longer depends on the storage of
+     * {@code index}.
+     *
+     * @param index sorted input
+     * @return the row ends, in row order
+     */
+    public static KeyValueIndex rowEnds(KeyValueIndex index) {
+        int[] positions = positions(index);
+        int[] keys = new int[positions.length];
+        long[] offsets = new long[positions.length];
+        int[] lengths = new int[positions.length];
+        long heapSize = 0;
+        for (int i = 0; i < positions.length; i++) {
+            heapSize += index.valueBytes(positions[i]).byteSize();
+        }
+        MemorySegment heap = MemorySegment.ofArray(new byte[Math.toIntExact(heapSize)]);
+        long offset = 0;
+        for (int i = 0; i < positions.length; i++) {
+            MemorySegment value = index.valueBytes(positions[i]);
+            MemorySegment.copy(value, 0, heap, offset, value.byteSize());
+            keys[i] = index.keyAt(positions[i]);
+            offsets[i] = offset;
+            lengths[i] = (int) value.byteSize();
+            offset += value.byteSize();
+        }
+        return new ArrayKeyValueIndex(heap, keys, offsets, lengths, positions.length);
+    }
+
+    /**
+     * Streaming decode for files too large to index. The file is scanned once
+     * and only the lines whose key is triangular are kept, so memory grows
+     * with the number of rows instead of the number of lines. This relies on
+     * the puzzle layout, where the keys are exactly {@code 1..n} and therefore
+     * a key is also its own sorted position.
+     *
+     * @param file input in {@code number word} format
+     * @return the triangular-key entries, sorted by key
+     * @throws IOException if the file cannot be mapped
+     */
+    public static KeyValueIndex decodeStream(Path file) throws IOException {
+        MemorySegment data = MappedInputParser.map(file);
+        TriangularKeys kept = new TriangularKeys();
+        MappedInputParser.scan(data, 0, data.byteSize(), kept);
+        return kept.toIndex(data);
+    }
+
+    /**
+     * Parse buffer that drops every line whose key is not a row end.
+     */
+    static class TriangularKeys extends MappedInputParser.ParseBuffer {
+
+        TriangularKeys() {
+            super(64);
+        }
+
+        @Override
+        void add(int key, long offset, int length) {
+            if (isTriangular(key)) {
+                super.add(key, offset, length);
+            }
+        }
+    }
+}
@@ -3,12 +3,12 @@
  */
 package net.test.local.simple.codigo;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
  *
@@ -16,52 +16,45 @@ import java.util.TreeMap;
  */
 public class Simplecodigo {
 
+    // -Dsimplecodigo.parallelism=N reparte el análisis en N hilos
+    static final int PARALLELISM = Integer.getInteger("simplecodigo.parallelism", 1);
+    // -Dsimplecodigo.dictionary=true guarda cada palabra una sola vez
+    static final boolean DICTIONARY = Boolean.getBoolean("simplecodigo.dictionary");
+    // -Dsimplecodigo.layout=compact escribe una línea "fila clave palabra" por fila
+    static final DecodeWriter.Layout LAYOUT = "compact".equalsIgnoreCase(System.getProperty("simplecodigo.layout"))
+            ? DecodeWriter.Layout.COMPACT : DecodeWriter.Layout.HUMAN;
+    // -Dsimplecodigo.output=archivo escribe el resultado en un archivo en vez de stdout
+    static final String OUTPUT = System.getProperty("simplecodigo.output");
+    // -Dsimplecodigo.batch.concurrency=N archivos leídos a la vez en modo --batch
+    static final int BATCH_CONCURRENCY = Integer.getInteger("simplecodigo.batch.concurrency", 64);
+
     public static void main(String[] args) {
 
-        Map<Integer, String> dataMap = new HashMap<>();
+        if (args.length > 0 && ("--decode".equals(args[0]) || "--stream".equals(args[0])
+                || "--indexed".equals(args[0]))) {
+            decodeOnly(args);
+            return;
+        }
+        if (args.length > 1 && "--batch".equals(args[0])) {
+            batch(Arrays.asList(args).subList(1, args.length));
+            return;
+        }
+        if (args.length > 1 && "--follow".equals(args[0])) {
+            follow(Path.of(args[1]));
+            return;
+        }
 
-        try (
-                BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(
-                                Simplecodigo.class.getResourceAsStream(
-                                        "/coding_qual_input.txt")
-                        )
-                )) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(" ", 2); // Split into number and string parts
-                if (parts.length == 2) { // Ensure both parts are present
-                    try {
-                        int key = Integer.parseInt(parts[0]);
-                        String value = parts[1];
-                        dataMap.put(key, value);
-                    } catch (NumberFormatException e) {
-                        System.err.println("Formato de número en línea: " + line);
-                    }
-                } else {
-                    System.err.println("Formato de línea inválido: " + line);
+        try {
+            KeyValueIndex ordenado = compact(new MappedInputParser(PARALLELISM).parseResource("/coding_qual_input.txt"));
+            try (DecodeWriter out = openOutput()) {
+                if (LAYOUT == DecodeWriter.Layout.HUMAN) {
+                    out.writeIndex(ordenado).writeAscii("HashMap resultado:").newLine();
                 }
+                out.writeRows(ordenado, LAYOUT);
             }
         } catch (IOException e) {
             System.err.println("Error leyendo archivo: " + e.getMessage());
-        }
-
-        TreeMap<Integer, String> ordenado = new TreeMap<>(dataMap);
-        System.out.println(ordenado);
-
-        System.out.println("HashMap resultado:");
-        int k = 0, n = 0;
-
-        for (Map.Entry<Integer, String> entry : ordenado.entrySet()) {
-            System.out.print(entry.getValue() + "\t");
-            if (k != n) {
-                n++;
-            } else {
-                System.out.print("\"" + entry.getValue() + "\"\n");
-                k++;
-                n = 0;
-            }
-
+            return;
         }
 
         Map<Integer, String> componentes = new HashMap<>();
@@ -75,8 +68,7 @@ public class Simplecodigo {
         componentes.put(8, "coral");
         componentes.put(9, "primal");
 
-        k = 0;
-        n = 0;
+        int k = 0, n = 0;
         for (Map.Entry<Integer, String> entry : componentes.entrySet()) {
 
             System.out.print(entry.getValue() + "[" + k + "](" + n + ")\t");
@@ -90,4 +82,77 @@ public class Simplecodigo {
         }
     }
 
+    static KeyValueIndex compact(KeyValueIndex index) {
+        return DICTIONARY ? DictionaryKeyValueIndex.encode(index) : index;
+    }
+
+    // --follow archivo: imprime las filas a medida que se agregan líneas al archivo
+    private static void follow(Path file) {
+        try (DecodeWriter out = openOutput()) {
+            new TailFollower(file).follow((index, firstRow, lastRow, reset) -> {
+                if (reset && firstRow <= lastRow && LAYOUT == DecodeWriter.Layout.HUMAN) {
+                    out.writeAscii("--- reordenado ---").newLine();
+                }
+                out.writeRows(index, LAYOUT, firstRow, lastRow).flush();
+            });
+        } catch (IOException e) {
+            System.err.println("Error leyendo archivo: " + e.getMessage());
+        } catch (InterruptedException e) {
+            System.err.println("Interrumpido el seguimiento");
+        }
+    }
+
+    // --batch directorio|archivo...: decodifica todos en esta JVM, un hilo virtual por archivo
+    private static void batch(List<String> paths) {
+        try {
+            List<Path> files = BatchDecoder.inputs(paths.stream().map(Path::of).toList());
+            List<BatchDecoder.Result> results = new BatchDecoder(BATCH_CONCURRENCY).decodeAll(files);
+            try (DecodeWriter out = openOutput()) {
+                BatchDecoder.write(results, out, LAYOUT);
+            }
+        } catch (IOException e) {
+            System.err.println("Error leyendo archivo: " + e.getMessage());
+        } catch (InterruptedException e) {
+            System.err.println("Interrumpido el lote");
+        }
+    }
+
+    static DecodeWriter openOutput() throws IOException {
+        return OUTPUT != null ? DecodeWriter.toFile(Path.of(OUTPUT)) : DecodeWriter.toStdout();
+    }
+
+    // --decode [archivo]: solo el mensaje, leyendo las posiciones triangulares
+    // --stream archivo: igual, sin indexar el archivo completo
+    // --indexed archivo: igual, desde archivo.idx (se recompila si está desactualizado)
+    private static void decodeOnly(String[] args) {
+        if (!"--decode".equals(args[0]) && args.length < 2) {
+            System.err.println("Uso: " + args[0] + " <archivo>");
+            return;
+        }
+        try {
+            if ("--stream".equals(args[0])) {
+                // Only the row ends were kept, one per row
+                KeyValueIndex rowEnds = PyramidDecoder.decodeStream(Path.of(args[1]));
+                try (DecodeWriter out = openOutput()) {
+                    out.writeMessage(rowEnds, LAYOUT);
+                }
+                return;
+            }
+            MappedInputParser parser = new MappedInputParser(PARALLELISM);
+            KeyValueIndex index;
+            if ("--indexed".equals(args[0])) {
+                index = BinaryIndexFile.open(Path.of(args[1]), parser);
+            } else {
+                index = compact(args.length > 1
+                        ? parser.parse(Path.of(args[1]))
+                        : parser.parseResource("/coding_qual_input.txt"));
+            }
+            try (DecodeWriter out = openOutput()) {
+                out.writeMessage(index, PyramidDecoder.positions(index), LAYOUT);
+            }
+        } catch (IOException e) {
+            System.err.println("Error leyendo archivo: " + e.getMessage());
+        }
+    }
+
 }
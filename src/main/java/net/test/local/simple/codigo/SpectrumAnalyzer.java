@@ -0,0 +1,234 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spectrum of a mono stream in logarithmic frequency bands. Samples go into
+ * a ring; every hop (a quarter of the FFT size, so consecutive frames
+ * overlap by 75%) the last {@code size} samples are Hann-windowed and
+ * transformed with a radix-2 real FFT: the real frame is packed as a complex
+ * one of half the length, transformed in place and split into the
+ * {@code size / 2 + 1} bins of the real spectrum. Each band keeps the
+ * strongest bin between its edges, in dB relative to a full-scale sine.
+ * <p>
+ * Window, twiddles, bit-reversal table and band edges are computed once, and
+ * all work arrays are reused, so {@link #process} allocates nothing.
+ * Results are published through a triple buffer: the analyzing thread never
+ * waits, and one reader (the EDT) takes the latest spectrum with
+ * {@link #poll()}.
+ *
+ * @author pc
+ */
+public class SpectrumAnalyzer {
+
+    private static final int FRESH = 4;
+
+    private final int size;
+    private final int half;
+    private final int hop;
+    private final int log2Half;
+    private final float[] window;
+    private final float[] cos;
+    private final float[] sin;
+    private final float[] splitCos;
+    private final float[] splitSin;
+    private final int[] reversed;
+    private final int[] bandStart;
+    private final int[] bandEnd;
+    private final float[] bandHz;
+    private final double fullScale;
+
+    // Input ring and work arrays, owned by the analyzing thread
+    private final float[] ring;
+    private int ringPos;
+    private int sinceLastFrame;
+    private final float[] re;
+    private final float[] im;
+    private final float[] power;
+
+    // Triple buffer of band levels: back is written, front is read
+    private final float[][] levels;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+
+    /**
+     * @param size FFT size, a power of two of at least 16
+     * @param sampleRate of the stream
+     * @param bands number of logarithmic bands
+     * @param lowHz lower edge of the first band; the last ends at the
+     * Nyquist frequency or 20 kHz, whichever is lower
+     */
+    public SpectrumAnalyzer(int size, float sampleRate, int bands, float lowHz) {
+        if (size < 16 || Integer.bitCount(size) != 1 || bands < 1) {
+            throw new IllegalArgumentException("Tamaño de FFT o bandas inválidos: " + size + ", " + bands);
+        }
+        this.size = size;
+        this.half = size / 2;
+        this.hop = size / 4;
+        this.log2Half = Integer.numberOfTrailingZeros(half);
+
+        window = new float[size];
+        double windowSum = 0;
+        for (int i = 0; i < size; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / size));
+            windowSum += window[i];
+        }
+        // A full-scale sine peaks at |X| = sum(window) / 2
+        fullScale = windowSum / 2 * (windowSum / 2);
+
+        cos = new float[half / 2];
+        sin = new float[half / 2];
+        for (int i = 0; i < half / 2; i++) {
+            cos[i] = (float) Math.cos(2 * Math.PI * i / half);
+            sin[i] = (float) -Math.sin(2 * Math.PI * i / half);
+        }
+        splitCos = new float[half + 1];
+        splitSin = new float[half + 1];
+        for (int k = 0; k <= half; k++) {
+            splitCos[k] = (float) Math.cos(2 * Math.PI * k / size);
+            splitSin[k] = (float) -Math.sin(2 * Math.PI * k / size);
+        }
+        reversed = new int[half];
+        for (int i = 0; i < half; i++) {
+            reversed[i] = Integer.reverse(i) >>> (32 - log2Half);
+        }
+
+        bandStart = new int[bands];
+        bandEnd = new int[bands];
+        bandHz = new float[bands + 1];
+        double highHz = Math.min(20000, sampleRate / 2);
+        double binHz = sampleRate / size;
+        for (int b = 0; b <= bands; b++) {
+            bandHz[b] = (float) (lowHz * Math.pow(highHz / lowHz, b / (double) bands));
+        }
+        for (int b = 0; b < bands; b++) {
+            int start = (int) Math.min(half, Math.round(bandHz[b] / binHz));
+            // Narrow low bands still get a bin, even if it repeats
+            bandStart[b] = start;
+            bandEnd[b] = (int) Math.min(half + 1, Math.max(start + 1, Math.round(bandHz[b + 1] / binHz)));
+        }
+
+        ring = new float[size];
+        re = new float[half];
+        im = new float[half];
+        power = new float[half + 1];
+        levels = new float[3][bands];
+        for (float[] level : levels) {
+            Arrays.fill(level, -120f);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int bands() {
+        return levels[0].length;
+    }
+
+    /**
+     * @return lower edge of band {@code band}, or the upper edge of the last
+     * band for {@code band == bands()}
+     */
+    public float bandEdgeHz(int band) {
+        return bandHz[band];
+    }
+
+    /**
+     * Adds samples, analyzing a frame every hop. Analyzing thread only.
+     */
+    public void process(float[] samples, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            ring[ringPos] = samples[offset + i];
+            ringPos = (ringPos + 1) & (size - 1);
+            if (++sinceLastFrame == hop) {
+                sinceLastFrame = 0;
+                analyze();
+            }
+        }
+    }
+
+    /**
+     * Reader thread only.
+     *
+     * @return band levels in dBFS, newer than the last call, or {@code null}
+     * if there is nothing new; valid until the next call
+     */
+    public float[] poll() {
+        if ((middle.get() & FRESH) == 0) {
+            return null;
+        }
+        front = middle.getAndSet(front) & 3;
+        return levels[front];
+    }
+
+    private void analyze() {
+        // Oldest sample first, windowed and packed as even/odd pairs
+        for (int k = 0, j = ringPos; k < half; k++) {
+            int n = 2 * k;
+            re[reversed[k]] = ring[j] * window[n];
+            j = (j + 1) & (size - 1);
+            im[reversed[k]] = ring[j] * window[n + 1];
+            j = (j + 1) & (size - 1);
+        }
+        fft();
+        split();
+
+        float[] out = levels[back];
+        double scale = 1 / fullScale;
+        for (int b = 0; b < out.length; b++) {
+            float strongest = 0;
+            for (int k = bandStart[b]; k < bandEnd[b]; k++) {
+                strongest = Math.max(strongest, power[k]);
+            }
+            out[b] = (float) Math.max(-120, 10 * Math.log10(strongest * scale + 1e-12));
+        }
+        back = middle.getAndSet(back | FRESH) & 3;
+    }
+
+    // Iterative radix-2 decimation in time; input already in bit-reversed order
+    private void fft() {
+        for (int length = 2; length <= half; length <<= 1) {
+            int span = length >> 1;
+            int step = half / length;
+            for (int start = 0; start < half; start += length) {
+                for (int j = 0, t = 0; j < span; j++, t += step) {
+                    int a = start + j;
+                    int b = a + span;
+                    float wr = cos[t];
+                    float wi = sin[t];
+                    float br = re[b] * wr - im[b] * wi;
+                    float bi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - br;
+                    im[b] = im[a] - bi;
+                    re[a] += br;
+                    im[a] += bi;
+                }
+            }
+        }
+    }
+
+    // Power of the real spectrum from the half-length complex one
+    private void split() {
+        for (int k = 0; k <= half; k++) {
+            int a = k == half ? 0 : k;
+            int b = k == 0 ? 0 : half - k;
+            // Even part (Z[k] + conj Z[N/2-k]) / 2, odd part (Z[k] - conj Z[N/2-k]) / 2i
+            float evenRe = (re[a] + re[b]) * 0.5f;
+            float evenIm = (im[a] - im[b]) * 0.5f;
+            float oddRe = (im[a] + im[b]) * 0.5f;
+            float oddIm = (re[b] - re[a]) * 0.5f;
+            float wr = splitCos[k];
+            float wi = splitSin[k];
+            float xr = evenRe + oddRe * wr - oddIm * wi;
+            float xi = evenIm + oddRe * wi + oddIm * wr;
+            power[k] = xr * xr + xi * xi;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import javax.swing.JComponent;
+
+/**
+ * Bar display of a {@link SpectrumAnalyzer}. {@link #refresh()}, called on
+ * the EDT by a {@link MeterRefresher} tick, takes the latest spectrum, lets
+ * the bars fall at most {@value #FALL_DB_PER_SECOND} dB per second, and
+ * writes the bars straight into the pixel array of a {@code BufferedImage}
+ * that is kept until the component changes size; painting only copies that
+ * image. Row colors are precomputed, so a refresh allocates nothing.
+ *
+ * @author pc
+ */
+public class SpectrumView extends JComponent {
+
+    static final float FALL_DB_PER_SECOND = 30;
+    // Bottom of the scale, in dBFS
+    private static final float FLOOR_DB = -90;
+    private static final int BACKGROUND = 0x101418;
+    private static final int GAP = 1;
+
+    private final SpectrumAnalyzer analyzer;
+    private final float fallPerRefresh;
+    private final float[] latest;
+    private final float[] shown;
+    private BufferedImage image;
+    private int[] pixels;
+    private int[] rowColors;
+
+    /**
+     * @param refreshesPerSecond how often {@link #refresh()} is called, for
+     * the fall rate
+     */
+    public SpectrumView(SpectrumAnalyzer analyzer, int refreshesPerSecond) {
+        this.analyzer = analyzer;
+        this.fallPerRefresh = FALL_DB_PER_SECOND / refreshesPerSecond;
+        this.latest = new float[analyzer.bands()];
+        this.shown = new float[analyzer.bands()];
+        Arrays.fill(latest, FLOOR_DB);
+        Arrays.fill(shown, FLOOR_DB);
+        setPreferredSize(new Dimension(analyzer.bands() * 8, 240));
+        setOpaque(true);
+    }
+
+    /**
+     * Takes the latest spectrum, if any, and repaints. EDT only.
+     */
+    public void refresh() {
+        float[] levels = analyzer.poll();
+        if (levels != null) {
+            System.arraycopy(levels, 0, latest, 0, latest.length);
+        }
+        boolean changed = false;
+        for (int b = 0; b < shown.length; b++) {
+            float next = Math.max(Math.max(FLOOR_DB, latest[b]), shown[b] - fallPerRefresh);
+            if (next != shown[b]) {
+                shown[b] = next;
+                changed = true;
+            }
+        }
+        if (changed && render()) {
+            repaint();
+        }
+    }
+
+    // Draws the bars into the image; false if there is nothing to draw on
+    private boolean render() {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            rowColors = new int[height];
+            for (int y = 0; y < height; y++) {
+                // Green at the bottom through yellow to red at 0 dBFS
+                float t = 1 - y / (float) (height - 1);
+                rowColors[y] = Color.HSBtoRGB(0.33f * (1 - t), 0.9f, 0.95f) & 0xFFFFFF;
+            }
+        }
+        Arrays.fill(pixels, BACKGROUND);
+        int bands = shown.length;
+        for (int b = 0; b < bands; b++) {
+            int x0 = b * width / bands;
+            int x1 = Math.max(x0 + 1, (b + 1) * width / bands - GAP);
+            int top = Math.round((shown[b] / FLOOR_DB) * (height - 1));
+            for (int y = Math.max(0, top); y < height; y++) {
+                Arrays.fill(pixels, y * width + x0, y * width + x1, rowColors[y]);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        if (image == null || image.getWidth() != getWidth() || image.getHeight() != getHeight()) {
+            render();
+        }
+        if (image != null) {
+            g.drawImage(image, 0, 0, null);
+        } else {
+            g.setColor(new Color(BACKGROUND));
+            g.fillRect(0, 0, getWidth(), getHeight());
+        }
+    }
+}
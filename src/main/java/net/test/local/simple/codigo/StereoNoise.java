@@ -4,13 +4,10 @@
  */
 package net.test.local.simple.codigo;
 
-import java.io.ByteArrayInputStream;
-import java.util.Random;
+import java.io.IOException;
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.SourceDataLine;
 
 /**
  *
@@ -18,50 +15,50 @@ import javax.sound.sampled.SourceDataLine;
  */
 public class StereoNoise {
 
-    public static void main(String[] args) throws LineUnavailableException {
+    public static void main(String[] args) throws LineUnavailableException, IOException, InterruptedException {
         int sampleRate = 44100;
         int sampleSizeInBits = 16;
         int channels = 2;
         boolean signed = true;
-        boolean bigEndian = true;
+        // Little-endian, like WAV, so file sinks take the blocks without a swap
+        boolean bigEndian = false;
         AudioFormat format = new AudioFormat(sampleRate, sampleSizeInBits, channels, signed, bigEndian);
 
-        int bufferSize = 4096;
-        byte[] buffer = new byte[bufferSize * format.getFrameSize()];
-        AudioInputStream audioInputStream = new AudioInputStream(new ByteArrayInputStream(buffer), format, bufferSize);
+        AudioMetrics metrics = AudioMetrics.register("StereoNoise", format);
+        PcmSink sink = PcmSink.open(format, AudioSystem.NOT_SPECIFIED, metrics);
+        // 4096 frames, or the tuned block in low-latency mode
+        int bufferSize = sink.blockFrames(4096);
+        PcmBufferPool pool = new PcmBufferPool(format, bufferSize, 2);
 
-        SourceDataLine line = AudioSystem.getSourceDataLine(format);
-        line.open(format);
-        line.start();
+        PcmPacker packer = PcmPacker.forFormat(format);
+        NoiseEngine noise = new NoiseEngine(System.nanoTime());
+        float[][] channelBlocks = new float[channels][bufferSize];
+        OscillatorBank sine = new OscillatorBank(sampleRate, OscillatorBank.Mode.WAVETABLE);
+        sine.add(440.0, 0.0, 1.0f);
 
-        Random random = new Random();
-        double angle = 0.0;
-        double increment = 2 * Math.PI * 440.0 / sampleRate;
+        try (metrics; sink; pool) {
+            long remaining = PcmSink.frameLimit(format);
+            while (remaining > 0) {
+                int frames = (int) Math.min(bufferSize, remaining);
+                long start = System.nanoTime();
+                //Canal izquierdo: onda senoidal
+                sine.render(channelBlocks[0], 0, frames);
+                //Canal derecho: ruido blanco
+                noise.fill(channelBlocks[1], 0, frames, NoiseEngine.Distribution.GAUSSIAN, 1.0f);
 
-        while (true) {
-            for (int i = 0; i < bufferSize; i++) {
-                //Canal izquierdo
-                short leftSample = (short) (Math.sin(angle) * Short.MAX_VALUE); //Onda senoidal
-                //Canal derecho
-                short rightSample = (short) (random.nextGaussian() * Short.MAX_VALUE); // Ruido blanco
-                angle += increment;
-
-                // Interleave samples into the buffer
-                int offset = i * format.getFrameSize();
-                if (format.isBigEndian()) {
-                    buffer[offset] = (byte) (leftSample >>> 8);
-                    buffer[offset + 1] = (byte) leftSample;
-                    buffer[offset + 2] = (byte) (rightSample >>> 8);
-                    buffer[offset + 3] = (byte) rightSample;
-                } else {
-                    buffer[offset + 1] = (byte) (leftSample >>> 8);
-                    buffer[offset] = (byte) leftSample;
-                    buffer[offset + 3] = (byte) (rightSample >>> 8);
-                    buffer[offset + 2] = (byte) rightSample;
+                // Scale, clip and interleave both channels in one pass
+                try (PcmBuffer buffer = pool.acquire()) {
+                    packer.pack(channelBlocks, 0, frames, buffer);
+                    metrics.recordGeneration(start, frames);
+                    sink.write(buffer);
                 }
+                remaining -= frames;
             }
-
-            line.write(buffer, 0, buffer.length);
         }
+        String report = sink.report();
+        if (report != null) {
+            System.out.println(report);
+        }
+        System.out.println(metrics.report());
     }
 }
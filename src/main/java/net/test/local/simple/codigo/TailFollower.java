@@ -0,0 +1,228 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the sorted index of a {@code number word} file that other processes
+ * keep appending to. Each {@link #refresh(Listener)} parses only the complete lines
+ * added since the previous one. While the new keys are all above the ones
+ * already seen, which is how producers append, the update is an append and
+ * costs only the size of the new lines; any other key forces a merge with
+ * the existing index.
+ *
+ * @author pc
+ */
+public class TailFollower {
+
+    // Poll anyway now and then: some file systems never report changes
+    static final long POLL_MILLIS = 1000;
+
+    /**
+     * Receives the decoded pyramid as it grows.
+     */
+    public interface Listener {
+
+        /**
+         * @param index current index
+         * @param firstRow first row that is new or changed (1-based)
+         * @param lastRow last complete row
+         * @param reset whether rows before {@code firstRow} changed too, in
+         * which case {@code firstRow} is 1 and everything is sent again
+         */
+        void rowsUpdated(KeyValueIndex index, int firstRow, int lastRow, boolean reset) throws IOException;
+    }
+
+    private final Path file;
+
+    private MemorySegment data;
+    private int[] keys = new int[1024];
+    private long[] offsets = new long[1024];
+    private int[] lengths = new int[1024];
+    private int size;
+    private long parsedBytes;
+    private int rows;
+    // File key, or creation time where there is none, of the file parsed so far
+    private Object fileId;
+
+    public TailFollower(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return a view of the current index; it is not affected by later
+     * merges, and appends only add positions past its size
+     */
+    public synchronized KeyValueIndex index() {
+        return new ArrayKeyValueIndex(data, keys, offsets, lengths, size);
+    }
+
+    /**
+     * Parses what was appended since the last call and reports the rows that
+     * became complete.
+     *
+     * @param listener receives the changed rows, if any
+     * @return number of lines parsed
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized int refresh(Listener listener) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long fileSize = attributes.size();
+        Object id = attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+        boolean replaced = fileId != null && !fileId.equals(id);
+        fileId = id;
+        boolean reset = false;
+        if (fileSize < parsedBytes || replaced) {
+            // Truncated or replaced: start over, in new arrays so earlier views keep their contents
+            keys = new int[keys.length];
+            offsets = new long[offsets.length];
+            lengths = new int[lengths.length];
+            size = 0;
+            parsedBytes = 0;
+            rows = 0;
+            reset = true;
+        }
+        if (fileSize == parsedBytes && !reset) {
+            return 0;
+        }
+        // Mapping is only address space, the parsed prefix is not read again
+        data = MappedInputParser.map(file);
+        long end = lastLineEnd(data, parsedBytes, data.byteSize());
+        MappedInputParser.ParseBuffer delta = new MappedInputParser.ParseBuffer(
+                MappedInputParser.estimateLines(end - parsedBytes));
+        MappedInputParser.scan(data, parsedBytes, end, delta);
+        parsedBytes = end;
+
+        if (delta.size > 0) {
+            ArrayKeyValueIndex sorted = delta.toIndex(data);
+            if (size == 0 || sorted.keys[0] > keys[size - 1]) {
+                append(sorted);
+            } else {
+                merge(sorted);
+                reset = true;
+            }
+        }
+
+        int complete = PyramidDecoder.completeRows(size);
+        if (reset) {
+            rows = complete;
+            listener.rowsUpdated(index(), 1, complete, true);
+        } else if (complete > rows) {
+            int first = rows + 1;
+            rows = complete;
+            listener.rowsUpdated(index(), first, complete, false);
+        }
+        return delta.size;
+    }
+
+    /**
+     * Refreshes once, then again every time the file changes, until the
+     * thread is interrupted.
+     *
+     * @param listener receives the changed rows
+     * @throws IOException if the file or the watch service fails
+     * @throws InterruptedException when asked to stop
+     */
+    public void follow(Listener listener) throws IOException, InterruptedException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path name = file.getFileName();
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            refresh(listener);
+            while (true) {
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                boolean changed = key == null;
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || name.equals(event.context());
+                    }
+                    key.reset();
+                }
+                if (changed && Files.exists(file)) {
+                    refresh(listener);
+                }
+            }
+        }
+    }
+
+    // A trailing line without '\n' may still be half written: leave it for later
+    private static long lastLineEnd(MemorySegment data, long from, long to) {
+        for (long p = to - 1; p >= from; p--) {
+            if (data.get(ValueLayout.JAVA_BYTE, p) == '\n') {
+                return p + 1;
+            }
+        }
+        return from;
+    }
+
+    private void append(ArrayKeyValueIndex sorted) {
+        ensureCapacity(size + sorted.size);
+        System.arraycopy(sorted.keys, 0, keys, size, sorted.size);
+        System.arraycopy(sorted.offsets, 0, offsets, size, sorted.size);
+        System.arraycopy(sorted.lengths, 0, lengths, size, sorted.size);
+        size += sorted.size;
+    }
+
+    // New arrays, so views handed out earlier keep their contents
+    private void merge(ArrayKeyValueIndex sorted) {
+        int capacity = Math.max(keys.length, size + sorted.size);
+        int[] mergedKeys = new int[capacity];
+        long[] mergedOffsets = new long[capacity];
+        int[] mergedLengths = new int[capacity];
+        int i = 0, j = 0, n = 0;
+        while (i < size || j < sorted.size) {
+            boolean takeNew;
+            if (i == size) {
+                takeNew = true;
+            } else if (j == sorted.size) {
+                takeNew = false;
+            } else if (keys[i] == sorted.keys[j]) {
+                i++; // the appended line wins
+                takeNew = true;
+            } else {
+                takeNew = sorted.keys[j] < keys[i];
+            }
+            if (takeNew) {
+                mergedKeys[n] = sorted.keys[j];
+                mergedOffsets[n] = sorted.offsets[j];
+                mergedLengths[n] = sorted.lengths[j];
+                j++;
+            } else {
+                mergedKeys[n] = keys[i];
+                mergedOffsets[n] = offsets[i];
+                mergedLengths[n] = lengths[i];
+                i++;
+            }
+            n++;
+        }
+        keys = mergedKeys;
+        offsets = mergedOffsets;
+        lengths = mergedLengths;
+        size = n;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > keys.length) {
+            int grown = Math.max(capacity, keys.length * 2);
+            keys = Arrays.copyOf(keys, grown);
+            offsets = Arrays.copyOf(offsets, grown);
+            lengths = Arrays.copyOf(lengths, grown);
+        }
+    }
+}
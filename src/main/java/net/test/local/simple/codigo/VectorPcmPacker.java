@@ -0,0 +1,178 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API path of {@link PcmPacker}. Only loaded when the incubator
+ * module is present. Works in two passes: scale, clip and convert every
+ * channel into an interleaved {@code int} scratch block (a scatter store
+ * does the interleaving), then narrow that block to bytes. 16-bit samples
+ * are narrowed and byte-swapped as vectors; 24-bit samples have no lane type
+ * and are written by the scalar loop. Stereo 16-bit, the common case, skips
+ * the scatter: a whole frame fits in one {@code int} lane, so both channels
+ * are combined in registers and stored directly.
+ *
+ * @author pc
+ */
+final class VectorPcmPacker {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, FLOATS.vectorShape());
+    private static final VectorSpecies<Short> SHORTS = VectorSpecies.of(short.class,
+            VectorShape.forBitSize(INTS.vectorBitSize() / 2));
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> DOUBLE_INTS = VectorSpecies.of(int.class,
+            VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    private final int channels;
+    private final int bits;
+    private final boolean bigEndian;
+    private final ByteOrder order;
+    private final int maxValue;
+    // Lane i goes to frame i of the current channel
+    private final int[] interleave;
+    private int[] scratch = new int[0];
+
+    VectorPcmPacker(int channels, int bits, boolean bigEndian, int maxValue) {
+        this.channels = channels;
+        this.bits = bits;
+        this.bigEndian = bigEndian;
+        this.order = bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        this.maxValue = maxValue;
+        this.interleave = new int[Math.max(INTS.length(), DOUBLE_INTS.length())];
+        for (int i = 0; i < interleave.length; i++) {
+            interleave[i] = i * channels;
+        }
+    }
+
+    void pack(float[][] in, int inOffset, int frames, MemorySegment out, long outOffset) {
+        float scale = maxValue;
+        int upper = FLOATS.loopBound(frames);
+        if (channels == 2 && bits == 16) {
+            int i = 0;
+            for (; i < upper; i += FLOATS.length()) {
+                IntVector left = (IntVector) FloatVector.fromArray(FLOATS, in[0], inOffset + i)
+                        .mul(scale).max(-scale).min(scale)
+                        .convertShape(VectorOperators.F2I, INTS, 0);
+                IntVector right = (IntVector) FloatVector.fromArray(FLOATS, in[1], inOffset + i)
+                        .mul(scale).max(-scale).min(scale)
+                        .convertShape(VectorOperators.F2I, INTS, 0);
+                storeStereo16(left, right, out, outOffset + 4L * i);
+            }
+            for (; i < frames; i++) {
+                for (int c = 0; c < 2; c++) {
+                    float x = in[c][inOffset + i] * scale;
+                    PcmPacker.put(out, outOffset + 4L * i + 2 * c, (int) Math.max(-scale, Math.min(scale, x)), 16, bigEndian);
+                }
+            }
+            return;
+        }
+        int[] s = scratch(frames * channels);
+        for (int c = 0; c < channels; c++) {
+            float[] samples = in[c];
+            int i = 0;
+            for (; i < upper; i += FLOATS.length()) {
+                IntVector v = (IntVector) FloatVector.fromArray(FLOATS, samples, inOffset + i)
+                        .mul(scale).max(-scale).min(scale)
+                        .convertShape(VectorOperators.F2I, INTS, 0);
+                store(v, s, i, c);
+            }
+            for (; i < frames; i++) {
+                float x = samples[inOffset + i] * scale;
+                s[i * channels + c] = (int) Math.max(-scale, Math.min(scale, x));
+            }
+        }
+        narrow(s, frames * channels, out, outOffset);
+    }
+
+    void pack(double[][] in, int inOffset, int frames, MemorySegment out, long outOffset) {
+        double scale = maxValue;
+        int upper = DOUBLES.loopBound(frames);
+        if (channels == 2 && bits == 16) {
+            int i = 0;
+            for (; i < upper; i += DOUBLES.length()) {
+                IntVector left = (IntVector) DoubleVector.fromArray(DOUBLES, in[0], inOffset + i)
+                        .mul(scale).max(-scale).min(scale)
+                        .convertShape(VectorOperators.D2I, DOUBLE_INTS, 0);
+                IntVector right = (IntVector) DoubleVector.fromArray(DOUBLES, in[1], inOffset + i)
+                        .mul(scale).max(-scale).min(scale)
+                        .convertShape(VectorOperators.D2I, DOUBLE_INTS, 0);
+                storeStereo16(left, right, out, outOffset + 4L * i);
+            }
+            for (; i < frames; i++) {
+                for (int c = 0; c < 2; c++) {
+                    double x = in[c][inOffset + i] * scale;
+                    PcmPacker.put(out, outOffset + 4L * i + 2 * c, (int) Math.max(-scale, Math.min(scale, x)), 16, bigEndian);
+                }
+            }
+            return;
+        }
+        int[] s = scratch(frames * channels);
+        for (int c = 0; c < channels; c++) {
+            double[] samples = in[c];
+            int i = 0;
+            for (; i < upper; i += DOUBLES.length()) {
+                IntVector v = (IntVector) DoubleVector.fromArray(DOUBLES, samples, inOffset + i)
+                        .mul(scale).max(-scale).min(scale)
+                        .convertShape(VectorOperators.D2I, DOUBLE_INTS, 0);
+                store(v, s, i, c);
+            }
+            for (; i < frames; i++) {
+                double x = samples[inOffset + i] * scale;
+                s[i * channels + c] = (int) Math.max(-scale, Math.min(scale, x));
+            }
+        }
+        narrow(s, frames * channels, out, outOffset);
+    }
+
+    // Written in the target byte order, the int holds the left sample in its
+    // first two bytes and the right sample in the last two
+    private void storeStereo16(IntVector left, IntVector right, MemorySegment out, long offset) {
+        IntVector first = bigEndian ? left : right;
+        IntVector second = bigEndian ? right : left;
+        first.lanewise(VectorOperators.LSHL, 16).or(second.and(0xFFFF)).intoMemorySegment(out, offset, order);
+    }
+
+    private void store(IntVector v, int[] s, int frame, int channel) {
+        if (channels == 1) {
+            v.intoArray(s, frame);
+        } else {
+            v.intoArray(s, frame * channels + channel, interleave, 0);
+        }
+    }
+
+    private void narrow(int[] s, int samples, MemorySegment out, long outOffset) {
+        int j = 0;
+        if (bits == 16) {
+            int upper = INTS.loopBound(samples);
+            for (; j < upper; j += INTS.length()) {
+                ShortVector v = (ShortVector) IntVector.fromArray(INTS, s, j)
+                        .convertShape(VectorOperators.I2S, SHORTS, 0);
+                v.intoMemorySegment(out, outOffset + 2L * j, order);
+            }
+        }
+        int bytes = bits / 8;
+        for (; j < samples; j++) {
+            PcmPacker.put(out, outOffset + (long) j * bytes, s[j], bits, bigEndian);
+        }
+    }
+
+    private int[] scratch(int samples) {
+        if (scratch.length < samples) {
+            scratch = new int[samples];
+        }
+        return scratch;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API path of the {@link LevelMeterDsp} true-peak interpolator. Only
+ * loaded when the incubator module is present. Each lane is one output
+ * point; the taps are accumulated in registers with fused multiply-adds, so
+ * a block of points costs one unaligned load and one FMA per tap and phase.
+ *
+ * @author pc
+ */
+final class VectorTruePeak {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    private VectorTruePeak() {
+    }
+
+    /**
+     * @param x history followed by the block; point {@code j} is computed
+     * from {@code x[j .. j + taps)}
+     * @param phases coefficients per phase, tap {@code t} multiplying
+     * {@code x[j + taps - 1 - t]}
+     * @return the largest magnitude of points {@code 0 .. frames}
+     */
+    static float max(float[] x, int frames, float[][] phases, int taps) {
+        FloatVector max = FloatVector.zero(FLOATS);
+        int j = 0;
+        for (int bound = FLOATS.loopBound(frames); j < bound; j += FLOATS.length()) {
+            for (float[] phase : phases) {
+                FloatVector y = FloatVector.fromArray(FLOATS, x, j).mul(phase[taps - 1]);
+                for (int w = 1; w < taps; w++) {
+                    y = FloatVector.fromArray(FLOATS, x, j + w).lanewise(VectorOperators.FMA, phase[taps - 1 - w], y);
+                }
+                max = max.max(y.abs());
+            }
+        }
+        float result = max.reduceLanes(VectorOperators.MAX);
+        for (; j < frames; j++) {
+            result = Math.max(result, LevelMeterDsp.interpolate(x, j, phases, taps));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Mixes many mono voices, each with its own gain and pan, into one stereo
+ * block. The voices are split into contiguous partitions of
+ * {@value #VOICES_PER_PARTITION} that render on a {@link ForkJoinPool}, each
+ * into its own pair of partial buffers; the partials are then summed in
+ * partition order. The partitions depend only on the voice count, never on
+ * the number of threads or on which worker ran what, so the same voices and
+ * seed give bit-identical output on any machine.
+ * <p>
+ * Every block is timed against its duration: the real-time factor is the
+ * render time divided by the time the block takes to play, and a block
+ * with a factor above 1 would have missed its deadline on a live line.
+ * <p>
+ * Voices must not be added while a block is rendering.
+ *
+ * @author pc
+ */
+public class VoiceMixer implements AutoCloseable {
+
+    /**
+     * A mono sound source.
+     */
+    public interface Voice {
+
+        /**
+         * Writes the next {@code frames} samples to {@code out[0..frames)},
+         * overwriting it.
+         */
+        void render(float[] out, int frames);
+    }
+
+    static final int VOICES_PER_PARTITION = 8;
+
+    private final float sampleRate;
+    private final int blockFrames;
+    private final ForkJoinPool pool;
+    private final NoiseEngine seeds;
+    private final List<Voice> voices = new ArrayList<>();
+    private float[] leftGain = new float[0];
+    private float[] rightGain = new float[0];
+    private Partition[] parts;
+    private final Block block = new Block();
+
+    private long blocks;
+    private long lateBlocks;
+    private double lastFactor;
+    private double maxFactor;
+    private double factorSum;
+
+    /**
+     * @param sampleRate frames per second
+     * @param blockFrames largest block {@link #render} accepts
+     * @param parallelism rendering threads; does not change the output
+     * @param seed master seed of the noise voices
+     */
+    public VoiceMixer(float sampleRate, int blockFrames, int parallelism, long seed) {
+        if (blockFrames < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("Bloque o paralelismo inválidos: " + blockFrames + ", " + parallelism);
+        }
+        this.sampleRate = sampleRate;
+        this.blockFrames = blockFrames;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.seeds = new NoiseEngine(seed);
+    }
+
+    /**
+     * Adds a voice.
+     *
+     * @param gain linear gain
+     * @param pan -1 is left, 0 center, 1 right; constant power
+     * @return the voice number
+     */
+    public int add(Voice voice, float gain, float pan) {
+        double angle = (Math.max(-1, Math.min(1, pan)) + 1) * Math.PI / 4;
+        int n = voices.size();
+        if (n == leftGain.length) {
+            leftGain = Arrays.copyOf(leftGain, Math.max(8, n * 2));
+            rightGain = Arrays.copyOf(rightGain, leftGain.length);
+        }
+        leftGain[n] = (float) (gain * Math.cos(angle));
+        rightGain[n] = (float) (gain * Math.sin(angle));
+        voices.add(voice);
+        parts = null;
+        return n;
+    }
+
+    /**
+     * Adds a wavetable sine voice.
+     */
+    public int addSine(double frequency, float gain, float pan) {
+        OscillatorBank bank = new OscillatorBank(sampleRate, OscillatorBank.Mode.WAVETABLE);
+        bank.add(frequency, 0.0, 1.0f);
+        return add((out, frames) -> bank.render(out, 0, frames), gain, pan);
+    }
+
+    /**
+     * Adds a Gaussian noise voice whose stream is split from the master
+     * seed, so the n-th noise voice always plays the same noise.
+     */
+    public int addNoise(float gain, float pan) {
+        NoiseEngine noise = seeds.split();
+        return add((out, frames) -> noise.fill(out, 0, frames, NoiseEngine.Distribution.GAUSSIAN, 1.0f), gain, pan);
+    }
+
+    public int size() {
+        return voices.size();
+    }
+
+    /**
+     * Renders the next block of the mix.
+     *
+     * @param left destination of the left channel, overwritten
+     * @param right destination of the right channel, overwritten
+     * @param frames at most the block size given to the constructor
+     */
+    public void render(float[] left, float[] right, int frames) {
+        if (frames > blockFrames) {
+            throw new IllegalArgumentException("Bloque demasiado grande: " + frames);
+        }
+        long start = System.nanoTime();
+        if (parts == null) {
+            partition();
+        }
+        for (Partition part : parts) {
+            part.frames = frames;
+        }
+        if (pool == null || parts.length == 1) {
+            for (Partition part : parts) {
+                part.compute();
+            }
+        } else {
+            block.reinitialize();
+            pool.invoke(block);
+        }
+        System.arraycopy(parts[0].left, 0, left, 0, frames);
+        System.arraycopy(parts[0].right, 0, right, 0, frames);
+        for (int p = 1; p < parts.length; p++) {
+            float[] l = parts[p].left;
+            float[] r = parts[p].right;
+            for (int i = 0; i < frames; i++) {
+                left[i] += l[i];
+                right[i] += r[i];
+            }
+        }
+        record(System.nanoTime() - start, frames);
+    }
+
+    private void record(long nanos, int frames) {
+        double factor = nanos / (frames / (double) sampleRate * 1e9);
+        blocks++;
+        lastFactor = factor;
+        maxFactor = Math.max(maxFactor, factor);
+        factorSum += factor;
+        if (factor > 1) {
+            lateBlocks++;
+        }
+    }
+
+    /**
+     * @return render time over play time of the last block
+     */
+    public double lastRealTimeFactor() {
+        return lastFactor;
+    }
+
+    public double maxRealTimeFactor() {
+        return maxFactor;
+    }
+
+    public double meanRealTimeFactor() {
+        return blocks == 0 ? 0 : factorSum / blocks;
+    }
+
+    public long blocks() {
+        return blocks;
+    }
+
+    /**
+     * @return blocks that took longer to render than to play
+     */
+    public long lateBlocks() {
+        return lateBlocks;
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private void partition() {
+        int n = voices.size();
+        int count = Math.max(1, (n + VOICES_PER_PARTITION - 1) / VOICES_PER_PARTITION);
+        parts = new Partition[count];
+        for (int p = 0; p < count; p++) {
+            parts[p] = new Partition(p * VOICES_PER_PARTITION, Math.min(n, (p + 1) * VOICES_PER_PARTITION));
+        }
+    }
+
+    /**
+     * Runs every partition as its own task.
+     */
+    private class Block extends RecursiveAction {
+
+        @Override
+        protected void compute() {
+            for (Partition part : parts) {
+                part.reinitialize();
+            }
+            invokeAll(parts);
+        }
+    }
+
+    /**
+     * Voices {@code from..to} mixed into private partial buffers.
+     */
+    private class Partition extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+        private final float[] mono = new float[blockFrames];
+        private final float[] left = new float[blockFrames];
+        private final float[] right = new float[blockFrames];
+        private int frames;
+
+        Partition(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            Arrays.fill(left, 0, frames, 0.0f);
+            Arrays.fill(right, 0, frames, 0.0f);
+            for (int v = from; v < to; v++) {
+                voices.get(v).render(mono, frames);
+                float gl = leftGain[v];
+                float gr = rightGain[v];
+                for (int i = 0; i < frames; i++) {
+                    left[i] += gl * mono[i];
+                    right[i] += gr * mono[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Mixes {@code voices} voices, alternating sines and noise, to the sink
+     * selected by {@code simplecodigo.sink}, and prints the real-time
+     * factors. {@code -Dsimplecodigo.parallelism} sets the threads.
+     *
+     * @param args optional number of voices, 64 by default
+     */
+    public static void main(String[] args) throws LineUnavailableException, IOException {
+        int voiceCount = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int parallelism = Integer.getInteger("simplecodigo.parallelism", Runtime.getRuntime().availableProcessors());
+        AudioFormat format = new AudioFormat(44100, 16, 2, true, true);
+        int blockFrames = 1024;
+
+        PcmPacker packer = PcmPacker.forFormat(format);
+        float[][] channelBlocks = new float[2][blockFrames];
+        byte[] buffer = new byte[blockFrames * format.getFrameSize()];
+
+        PcmSink sink = PcmSink.open(format, AudioSystem.NOT_SPECIFIED);
+        try (sink; VoiceMixer mixer = new VoiceMixer(format.getSampleRate(), blockFrames, parallelism, 1L)) {
+            float gain = 1.0f / voiceCount;
+            for (int v = 0; v < voiceCount; v++) {
+                float pan = voiceCount > 1 ? 2.0f * v / (voiceCount - 1) - 1 : 0;
+                if (v % 2 == 0) {
+                    mixer.addSine(110.0 * Math.pow(2, (v % 48) / 12.0), gain, pan);
+                } else {
+                    mixer.addNoise(gain * 0.25f, pan);
+                }
+            }
+            long remaining = PcmSink.frameLimit(format);
+            while (remaining > 0) {
+                int frames = (int) Math.min(blockFrames, remaining);
+                mixer.render(channelBlocks[0], channelBlocks[1], frames);
+                packer.pack(channelBlocks, 0, frames, buffer, 0);
+                sink.write(buffer, 0, frames * format.getFrameSize());
+                remaining -= frames;
+            }
+            System.out.printf("%d voces, %d hilos: %d bloques, factor medio %.4f, máximo %.4f, %d tarde%n",
+                    voiceCount, parallelism, mixer.blocks(), mixer.meanRealTimeFactor(),
+                    mixer.maxRealTimeFactor(), mixer.lateBlocks());
+        }
+        String report = sink.report();
+        if (report != null) {
+            System.out.println(report);
+        }
+    }
+}
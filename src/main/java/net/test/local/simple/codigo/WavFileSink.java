@@ -0,0 +1,160 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Sink that stores the audio as a WAV file. Frames are collected in one
+ * large direct buffer and reach the channel a megabyte at a time, like
+ * {@link DecodeWriter}. The header is written up front with zero lengths and
+ * patched on {@link #close()}. Big-endian input is swapped to the
+ * little-endian order WAV requires while it is copied into the buffer, and
+ * little-endian {@link PcmBuffer}s of a page or more skip the copy
+ * altogether.
+ *
+ * @author pc
+ */
+public class WavFileSink implements PcmSink {
+
+    // One page; generator blocks (WhiteNoise 5 KB, StereoNoise 16 KB) are larger
+    private static final int DIRECT_WRITE_MIN = 4 << 10;
+    private static final ValueLayout.OfShort SHORT_BE = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfShort SHORT_LE = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfInt INT_BE = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfInt INT_LE = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final AudioFormat format;
+    private final ByteBuffer buffer;
+    private final MemorySegment bufferSegment;
+    private final boolean swap;
+    private final int sampleBytes;
+    private long dataBytes;
+
+    WavFileSink(FileChannel channel, AudioFormat format, int bufferSize) throws IOException {
+        this.channel = channel;
+        this.format = format;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        this.bufferSegment = MemorySegment.ofBuffer(buffer);
+        this.sampleBytes = format.getSampleSizeInBits() / 8;
+        this.swap = format.isBigEndian() && sampleBytes > 1;
+        WavHeader.write(buffer, format, 0);
+    }
+
+    /**
+     * Creates or truncates {@code file}.
+     *
+     * @param format any format {@link WavHeader#isSupported(AudioFormat)}
+     * accepts
+     */
+    public static WavFileSink create(Path file, AudioFormat format) throws IOException {
+        WavHeader.fileFormat(format);
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new WavFileSink(channel, format, DecodeWriter.DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    public AudioFormat format() {
+        return format;
+    }
+
+    public long bytesWritten() {
+        return dataBytes;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        append(MemorySegment.ofArray(data), offset, length);
+    }
+
+    /**
+     * Large little-endian buffers go to the channel straight from their own
+     * memory; anything else is copied (and swapped if needed) into the
+     * staging buffer.
+     */
+    @Override
+    public void write(PcmBuffer pcm) throws IOException {
+        if (!swap && pcm.byteLength() >= DIRECT_WRITE_MIN) {
+            checkFrames(pcm.byteLength());
+            flush();
+            dataBytes += pcm.writeTo(channel);
+            return;
+        }
+        append(pcm.data(), 0, pcm.byteLength());
+    }
+
+    private void append(MemorySegment data, long offset, int length) throws IOException {
+        checkFrames(length);
+        dataBytes += length;
+        while (length > 0) {
+            // Whole samples only, so a swap never straddles two chunks
+            int chunk = Math.min(length, buffer.remaining() - buffer.remaining() % sampleBytes);
+            if (chunk == 0) {
+                flush();
+                continue;
+            }
+            put(data, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    private void put(MemorySegment data, long offset, int length) {
+        int pos = buffer.position();
+        if (!swap) {
+            MemorySegment.copy(data, offset, bufferSegment, pos, length);
+        } else if (sampleBytes == 2) {
+            MemorySegment.copy(data, SHORT_BE, offset, bufferSegment, SHORT_LE, pos, length / 2);
+        } else if (sampleBytes == 4) {
+            MemorySegment.copy(data, INT_BE, offset, bufferSegment, INT_LE, pos, length / 4);
+        } else {
+            for (long i = 0; i < length; i += 3) {
+                bufferSegment.set(ValueLayout.JAVA_BYTE, pos + i, data.get(ValueLayout.JAVA_BYTE, offset + i + 2));
+                bufferSegment.set(ValueLayout.JAVA_BYTE, pos + i + 1, data.get(ValueLayout.JAVA_BYTE, offset + i + 1));
+                bufferSegment.set(ValueLayout.JAVA_BYTE, pos + i + 2, data.get(ValueLayout.JAVA_BYTE, offset + i));
+            }
+        }
+        buffer.position(pos + length);
+    }
+
+    private void checkFrames(int length) {
+        if (length % format.getFrameSize() != 0) {
+            throw new IllegalArgumentException("Bloque sin frames completos: " + length);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void drain() throws IOException {
+        flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            WavHeader.patchSizes(channel, dataBytes);
+        } finally {
+            channel.close();
+        }
+    }
+}
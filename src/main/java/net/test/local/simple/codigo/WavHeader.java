@@ -0,0 +1,204 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * The canonical 44-byte RIFF/WAVE header: a {@code fmt } chunk followed
+ * directly by the {@code data} chunk. Samples in a WAV file are always
+ * little-endian, 8-bit samples unsigned and wider ones signed.
+ * {@link #read(FileChannel)} also accepts files written by other tools,
+ * with extra chunks or a {@code WAVE_FORMAT_EXTENSIBLE} header.
+ *
+ * @author pc
+ */
+public final class WavHeader {
+
+    public static final int SIZE = 44;
+    private static final int RIFF_SIZE_OFFSET = 4;
+    private static final int DATA_SIZE_OFFSET = 40;
+
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_FLOAT = 3;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final long MAX_CHUNK = 0xFFFFFFFFL;
+    // RIFF, size and WAVE, then chunks of an id and a size
+    private static final int RIFF_HEADER = 12;
+    private static final int CHUNK_HEADER = 8;
+
+    private WavHeader() {
+    }
+
+    /**
+     * Where the samples of a WAV file are.
+     *
+     * @param format format of the samples, little-endian
+     * @param dataOffset file position of the first sample
+     * @param dataBytes length of the sample data, whole frames
+     */
+    public record Data(AudioFormat format, long dataOffset, long dataBytes) {
+
+        public long frames() {
+            return dataBytes / format.getFrameSize();
+        }
+    }
+
+    /**
+     * Reads the header of a WAV file, skipping chunks other than
+     * {@code fmt } and {@code data}. A data size of zero or beyond the end
+     * of the file, as left by a recording that was never closed, is taken
+     * to mean the rest of the file.
+     *
+     * @throws IOException if the file cannot be read, is not a WAV file or
+     * holds a format other than integer or float PCM
+     */
+    public static Data read(FileChannel channel) throws IOException {
+        ByteBuffer riff = readFully(channel, 0, RIFF_HEADER);
+        if (riff.getInt(0) != fourCc("RIFF") || riff.getInt(8) != fourCc("WAVE")) {
+            throw new IOException("No es un archivo WAV");
+        }
+        long size = channel.size();
+        AudioFormat format = null;
+        for (long position = RIFF_HEADER; position + CHUNK_HEADER <= size;) {
+            ByteBuffer chunk = readFully(channel, position, CHUNK_HEADER);
+            int id = chunk.getInt(0);
+            long length = chunk.getInt(4) & MAX_CHUNK;
+            position += CHUNK_HEADER;
+            if (id == fourCc("fmt ")) {
+                format = readFormat(readFully(channel, position, (int) Math.min(length, 40)));
+            } else if (id == fourCc("data")) {
+                if (format == null) {
+                    throw new IOException("Falta el bloque fmt antes de data");
+                }
+                long available = size - position;
+                long bytes = length == 0 || length > available ? available : length;
+                return new Data(format, position, bytes - bytes % format.getFrameSize());
+            }
+            // Chunks are padded to an even length
+            position += length + (length & 1);
+        }
+        throw new IOException("Falta el bloque data");
+    }
+
+    private static AudioFormat readFormat(ByteBuffer fmt) throws IOException {
+        if (fmt.limit() < 16) {
+            throw new IOException("Bloque fmt demasiado corto");
+        }
+        int tag = fmt.getShort(0) & 0xFFFF;
+        int channels = fmt.getShort(2) & 0xFFFF;
+        int sampleRate = fmt.getInt(4);
+        int blockAlign = fmt.getShort(12) & 0xFFFF;
+        int bits = fmt.getShort(14) & 0xFFFF;
+        if (tag == FORMAT_EXTENSIBLE && fmt.limit() >= 26) {
+            // The sub-format GUID starts with the plain format tag
+            tag = fmt.getShort(24) & 0xFFFF;
+        }
+        if (channels < 1 || bits % 8 != 0 || blockAlign != channels * bits / 8) {
+            throw new IOException("Formato no soportado: " + channels + " canales, " + bits + " bits, bloque " + blockAlign);
+        }
+        if (tag == FORMAT_FLOAT && (bits == 32 || bits == 64)) {
+            return new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, sampleRate, bits, channels, blockAlign, sampleRate, false);
+        }
+        if (tag == FORMAT_PCM && bits >= 8 && bits <= 32) {
+            return new AudioFormat(sampleRate, bits, channels, bits > 8, false);
+        }
+        throw new IOException("Formato no soportado: etiqueta " + tag + ", " + bits + " bits");
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Archivo WAV truncado");
+            }
+        }
+        return buffer.flip();
+    }
+
+    // A chunk id as read little-endian
+    private static int fourCc(String id) {
+        return id.charAt(0) | id.charAt(1) << 8 | id.charAt(2) << 16 | id.charAt(3) << 24;
+    }
+
+    /**
+     * @return whether {@code format} can be stored, possibly after swapping
+     * byte order
+     */
+    public static boolean isSupported(AudioFormat format) {
+        int bits = format.getSampleSizeInBits();
+        AudioFormat.Encoding encoding = format.getEncoding();
+        if (AudioFormat.Encoding.PCM_UNSIGNED.equals(encoding)) {
+            return bits == 8;
+        }
+        if (AudioFormat.Encoding.PCM_SIGNED.equals(encoding)) {
+            return bits == 16 || bits == 24 || bits == 32;
+        }
+        return AudioFormat.Encoding.PCM_FLOAT.equals(encoding) && bits == 32;
+    }
+
+    /**
+     * The same format as it will be stored in the file.
+     */
+    public static AudioFormat fileFormat(AudioFormat format) {
+        if (!isSupported(format)) {
+            throw new IllegalArgumentException("Formato no soportado en WAV: " + format);
+        }
+        if (!format.isBigEndian() || format.getSampleSizeInBits() == 8) {
+            return format;
+        }
+        return new AudioFormat(format.getEncoding(), format.getSampleRate(), format.getSampleSizeInBits(),
+                format.getChannels(), format.getFrameSize(), format.getFrameRate(), false);
+    }
+
+    /**
+     * Writes the header at the buffer's position.
+     *
+     * @param dataBytes length of the sample data; sizes above 4 GB are
+     * clamped, as RIFF cannot express them
+     */
+    public static void write(ByteBuffer out, AudioFormat format, long dataBytes) {
+        AudioFormat stored = fileFormat(format);
+        int tag = AudioFormat.Encoding.PCM_FLOAT.equals(stored.getEncoding()) ? FORMAT_FLOAT : FORMAT_PCM;
+        int channels = stored.getChannels();
+        int sampleRate = Math.round(stored.getSampleRate());
+        int blockAlign = stored.getFrameSize();
+        ByteOrder previous = out.order();
+        out.order(ByteOrder.LITTLE_ENDIAN)
+                .put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F')
+                .putInt((int) Math.min(MAX_CHUNK, dataBytes + SIZE - 8))
+                .put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E')
+                .put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ')
+                .putInt(16)
+                .putShort((short) tag)
+                .putShort((short) channels)
+                .putInt(sampleRate)
+                .putInt(sampleRate * blockAlign)
+                .putShort((short) blockAlign)
+                .putShort((short) stored.getSampleSizeInBits())
+                .put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a')
+                .putInt((int) Math.min(MAX_CHUNK, dataBytes));
+        out.order(previous);
+    }
+
+    /**
+     * Rewrites the RIFF and data sizes of a header written before the length
+     * was known. The channel position does not change.
+     *
+     * @param channel file that starts with the header
+     * @param dataBytes final length of the sample data
+     */
+    public static void patchSizes(FileChannel channel, long dataBytes) throws IOException {
+        ByteBuffer field = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        field.putInt(0, (int) Math.min(MAX_CHUNK, dataBytes + SIZE - 8));
+        channel.write(field, RIFF_SIZE_OFFSET);
+        field.clear().putInt(0, (int) Math.min(MAX_CHUNK, dataBytes));
+        channel.write(field, DATA_SIZE_OFFSET);
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package net.test.local.simple.codigo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Records captured audio to a WAV file without ever making the capture loop
+ * wait for the disk. The capture thread copies each block it has read into a
+ * {@link PcmBuffer} from a pool allocated up front and queues it; a writer
+ * thread hands the buffers to a {@link WavFileSink}, which gathers them into
+ * megabyte writes on its {@code FileChannel} and patches the header sizes
+ * when the recorder is closed.
+ * <p>
+ * The pool holds {@code -Dsimplecodigo.record.buffer} seconds of audio, 2 by
+ * default. When the disk falls further behind than that, or after a write
+ * error, blocks are dropped and counted instead of waiting.
+ *
+ * @author pc
+ */
+public class WavRecorder implements AutoCloseable {
+
+    private static final int MIN_BUFFERS = 8;
+    private static final long POLL_MILLIS = 50;
+
+    private final Path file;
+    private final WavFileSink sink;
+    private final PcmBufferPool pool;
+    private final BlockingQueue<PcmBuffer> queue;
+    private final Thread writer;
+    private boolean closed;
+    private volatile IOException failure;
+    // Written by the capture thread only
+    private volatile long offered;
+    private volatile long dropped;
+    // Written by the writer thread only
+    private volatile long written;
+    private volatile long lost;
+
+    private WavRecorder(Path file, WavFileSink sink, PcmBufferPool pool) {
+        this.file = file;
+        this.sink = sink;
+        this.pool = pool;
+        this.queue = new ArrayBlockingQueue<>(pool.available());
+        this.writer = new Thread(this::writeLoop, "grabacion-wav");
+        writer.start();
+    }
+
+    /**
+     * Creates or truncates {@code file} and starts the writer thread.
+     *
+     * @param blockFrames the largest block {@link #offer} will be given
+     */
+    public static WavRecorder start(Path file, AudioFormat format, int blockFrames) throws IOException {
+        double seconds = Double.parseDouble(System.getProperty("simplecodigo.record.buffer", "2"));
+        int buffers = Math.max(MIN_BUFFERS, (int) Math.ceil(seconds * format.getFrameRate() / blockFrames));
+        WavFileSink sink = WavFileSink.create(file, format);
+        PcmBufferPool pool;
+        try {
+            pool = new PcmBufferPool(format, blockFrames, buffers);
+        } catch (RuntimeException | Error e) {
+            // Out of memory or a bad size: do not leave the file open
+            try {
+                sink.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        return new WavRecorder(file, sink, pool);
+    }
+
+    /**
+     * Queues a copy of a captured block for the file. Never waits for the
+     * disk. Capture thread only.
+     *
+     * @param length bytes, whole frames
+     * @return false if the block was dropped
+     */
+    public synchronized boolean offer(byte[] data, int offset, int length) {
+        if (closed) {
+            return false;
+        }
+        offered++;
+        PcmBuffer pcm = failure == null ? pool.tryAcquire() : null;
+        if (pcm == null) {
+            dropped++;
+            return false;
+        }
+        pcm.copyFrom(data, offset, length);
+        // Never full: it has room for every buffer of the pool
+        queue.add(pcm);
+        return true;
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                PcmBuffer pcm = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (pcm == null) {
+                    if (isClosed()) {
+                        return;
+                    }
+                    continue;
+                }
+                try (pcm) {
+                    if (failure == null) {
+                        sink.write(pcm);
+                        written++;
+                    } else {
+                        lost++;
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                    lost++;
+                    System.out.println("Error escribiendo audio: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * @return blocks given to {@link #offer}
+     */
+    public long blocksOffered() {
+        return offered;
+    }
+
+    /**
+     * @return blocks in the file so far
+     */
+    public long blocksWritten() {
+        return written;
+    }
+
+    /**
+     * @return blocks that never reached the file: no free buffer, or a
+     * write error
+     */
+    public long blocksDropped() {
+        return dropped + lost;
+    }
+
+    /**
+     * @return the first write error, or {@code null}
+     */
+    public IOException failure() {
+        return failure;
+    }
+
+    /**
+     * Writes what is queued, patches the header and closes the file. Blocks
+     * offered afterwards are ignored.
+     *
+     * @throws IOException the first write error, if any, or one closing the
+     * file
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                // The file is only valid once the writer is done
+                interrupted = true;
+            }
+        }
+        try {
+            sink.close();
+        } finally {
+            pool.close();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return a one line summary in the style of {@link PcmSink#report()}
+     */
+    public String report() {
+        return String.format("grabación %s: %d bloques escritos, %d descartados, %.1f s",
+                file, blocksWritten(), blocksDropped(),
+                sink.bytesWritten() / (double) sink.format().getFrameSize() / sink.format().getFrameRate());
+    }
+}
@@ -9,8 +9,7 @@ package net.test.local.simple.codigo;
  * @author pc
  */
 import javax.sound.sampled.*;
-import java.nio.ByteBuffer;
-import java.util.Random;
+import java.io.IOException;
 
 public class WhiteNoise extends Thread {
 
@@ -19,50 +18,83 @@ public class WhiteNoise extends Thread {
     final static public int SAMPLE_SIZE = 2;
     final static public int PACKET_SIZE = 5000;
 
-    SourceDataLine line;
+    PcmSink sink;
+    AudioMetrics metrics;
     public boolean exitExecution = false;
+    private final NoiseEngine.Distribution distribution;
 
+    public WhiteNoise() {
+        this(NoiseEngine.Distribution.GAUSSIAN);
+    }
+
+    public WhiteNoise(NoiseEngine.Distribution distribution) {
+        this.distribution = distribution;
+    }
+
+    // Argumento opcional: "uniform" para ruido uniforme en vez de gaussiano
     public static void main(String[] args) {
         try {
-            generatorThread = new WhiteNoise();
+            generatorThread = new WhiteNoise(args.length > 0 && "uniform".equalsIgnoreCase(args[0])
+                    ? NoiseEngine.Distribution.UNIFORM
+                    : NoiseEngine.Distribution.GAUSSIAN);
             generatorThread.start();
-            Thread.sleep(3000);
-            generatorThread.exit();
+            if (System.getProperty("simplecodigo.duration") == null) {
+                Thread.sleep(3000);
+                generatorThread.exit();
+            }
+            generatorThread.join();
         } catch (InterruptedException e) {
             System.out.println("Interrumpido el hilo");
         }
     }
 
     public void run() {
-
+        AudioFormat format = new AudioFormat(44100, 16, 1, true, false);
+        AudioMetrics recorder = AudioMetrics.register("WhiteNoise", format);
+        metrics = recorder;
+        PcmSink output;
         try {
-            AudioFormat format = new AudioFormat(44100, 16, 1, true, true);
-            DataLine.Info info = new DataLine.Info(SourceDataLine.class, format, PACKET_SIZE * 2);
-
-            if (!AudioSystem.isLineSupported(info)) {
-                throw new LineUnavailableException();
-            }
-
-            line = (SourceDataLine) AudioSystem.getLine(info);
-            line.open(format);
-            line.start();
+            output = PcmSink.open(format, PACKET_SIZE * 2, recorder);
         } catch (LineUnavailableException e) {
             System.exit(-1);
+            return;
+        } catch (IOException e) {
+            System.err.println("Error abriendo salida de audio: " + e.getMessage());
+            recorder.close();
+            return;
         }
+        sink = output;
+        // Smaller blocks in low-latency mode
+        int blockFrames = output.blockFrames(PACKET_SIZE / SAMPLE_SIZE);
 
-        ByteBuffer buffer = ByteBuffer.allocate(PACKET_SIZE);
-
-        Random random = new Random();
-        while (exitExecution == false) {
-            buffer.clear();
-            for (int i = 0; i < PACKET_SIZE / SAMPLE_SIZE; i++) {
-                buffer.putShort((short) (random.nextGaussian() * Short.MAX_VALUE));
+        try (recorder; output; PcmBufferPool pool = new PcmBufferPool(format, blockFrames, 2)) {
+            NoiseEngine noise = new NoiseEngine(System.nanoTime());
+            PcmPacker packer = PcmPacker.forFormat(format);
+            float[][] block = new float[1][blockFrames];
+            long remaining = PcmSink.frameLimit(format);
+            while (exitExecution == false && remaining > 0) {
+                int frames = (int) Math.min(block[0].length, remaining);
+                long start = System.nanoTime();
+                noise.fill(block[0], 0, frames, distribution, 1.0f);
+                // The packer clips instead of letting peaks wrap around
+                try (PcmBuffer buffer = pool.acquire()) {
+                    packer.pack(block, 0, frames, buffer);
+                    recorder.recordGeneration(start, frames);
+                    output.write(buffer);
+                }
+                remaining -= frames;
             }
-            line.write(buffer.array(), 0, buffer.position());
+        } catch (IOException e) {
+            System.err.println("Error escribiendo audio: " + e.getMessage());
+        } catch (InterruptedException e) {
+            System.out.println("Interrumpido el hilo");
         }
-
-        line.drain();
-        line.close();
+        // After close, so buffered sinks have counted everything
+        String report = output.report();
+        if (report != null) {
+            System.out.println(report);
+        }
+        System.out.println(recorder.report());
     }
 
     public void exit() {